@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flipkart.ranger.ServiceProviderBuilders;
+import com.flipkart.ranger.healthcheck.HealthcheckStatus;
+import com.flipkart.ranger.serviceprovider.ServiceProvider;
+import feign.ranger.common.ShardInfo;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryForever;
+import org.apache.curator.test.TestingCluster;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-process zookeeper with a number of registered ranger service providers, set up the same way the tests do.
+ *
+ * @author phaneesh
+ */
+final class BenchmarkCluster implements AutoCloseable {
+
+    static final String NAMESPACE = "bench";
+
+    static final String SERVICE = "bench";
+
+    static final String ENVIRONMENT = "bench";
+
+    private static final int BASE_PORT = 20000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final List<ServiceProvider<ShardInfo>> providers = new ArrayList<>();
+
+    private final TestingCluster testingCluster;
+
+    private final CuratorFramework curator;
+
+    BenchmarkCluster(int nodes) throws Exception {
+        testingCluster = new TestingCluster(1);
+        testingCluster.start();
+        curator = CuratorFrameworkFactory.builder()
+                .connectString(testingCluster.getConnectString())
+                .namespace(NAMESPACE)
+                .retryPolicy(new RetryForever(3000))
+                .build();
+        curator.start();
+        curator.blockUntilConnected();
+        for (int i = 0; i < nodes; i++) {
+            ServiceProvider<ShardInfo> provider = ServiceProviderBuilders.<ShardInfo>shardedServiceProviderBuilder()
+                    .withCuratorFramework(curator)
+                    .withNamespace(NAMESPACE)
+                    .withServiceName(SERVICE)
+                    .withSerializer(data -> {
+                        try {
+                            return objectMapper.writeValueAsBytes(data);
+                        } catch (Exception e) {
+                            throw new IllegalStateException("Could not serialize node data", e);
+                        }
+                    })
+                    .withHostname("127.0.0.1")
+                    .withPort(BASE_PORT + i)
+                    .withNodeData(ShardInfo.builder()
+                            .environment(ENVIRONMENT)
+                            .build())
+                    .withHealthcheck(() -> HealthcheckStatus.healthy)
+                    .buildServiceDiscovery();
+            provider.start();
+            providers.add(provider);
+        }
+    }
+
+    CuratorFramework curator() {
+        return curator;
+    }
+
+    ObjectMapper objectMapper() {
+        return objectMapper;
+    }
+
+    @Override
+    public void close() throws Exception {
+        for (ServiceProvider<ShardInfo> provider : providers) {
+            provider.stop();
+        }
+        curator.close();
+        testingCluster.close();
+    }
+}
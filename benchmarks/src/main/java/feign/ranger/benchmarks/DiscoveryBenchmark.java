@@ -0,0 +1,153 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.benchmarks;
+
+import com.flipkart.ranger.model.ServiceNode;
+import feign.Request;
+import feign.RequestTemplate;
+import feign.ranger.RangerTarget;
+import feign.ranger.client.ServiceDiscoveryClient;
+import feign.ranger.common.ShardInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end cost of {@link RangerTarget} and {@link ServiceDiscoveryClient} against real ranger providers registered
+ * in an in-process zookeeper.
+ *
+ * @author phaneesh
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DiscoveryBenchmark {
+
+    private static final long DISCOVERY_TIMEOUT_MS = 30000;
+
+    @Param({"1", "10", "100"})
+    public int nodes;
+
+    private BenchmarkCluster cluster;
+
+    private ServiceDiscoveryClient client;
+
+    private RangerTarget<BenchmarkApi> target;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        cluster = new BenchmarkCluster(nodes);
+        client = ServiceDiscoveryClient.builder()
+                .curator(cluster.curator())
+                .namespace(BenchmarkCluster.NAMESPACE)
+                .serviceName(BenchmarkCluster.SERVICE)
+                .environment(BenchmarkCluster.ENVIRONMENT)
+                .objectMapper(cluster.objectMapper())
+                .build();
+        client.start();
+        long deadline = System.currentTimeMillis() + DISCOVERY_TIMEOUT_MS;
+        while (client.getAllNodes().size() < nodes) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Only discovered " + client.getAllNodes().size() + " of " + nodes + " nodes");
+            }
+            Thread.sleep(100);
+        }
+        target = RangerTarget.<BenchmarkApi>builder()
+                .type(BenchmarkApi.class)
+                .environment(BenchmarkCluster.ENVIRONMENT)
+                .namespace(BenchmarkCluster.NAMESPACE)
+                .service(BenchmarkCluster.SERVICE)
+                .curator(cluster.curator())
+                .objectMapper(cluster.objectMapper())
+                .rootPathPrefix("apis")
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        client.stop();
+        cluster.close();
+    }
+
+    /**
+     * {@link RangerTarget#apply(RequestTemplate)} writes the node url into the template, and feign treats a template
+     * that already has one as a retry, so every call gets a fresh template. Subtract {@link #template()} to get the
+     * cost of routing alone.
+     */
+    private static RequestTemplate newTemplate() {
+        return new RequestTemplate()
+                .method(Request.HttpMethod.GET)
+                .uri("/v1/test")
+                .resolve(Collections.emptyMap());
+    }
+
+    @Benchmark
+    public RequestTemplate template() {
+        return newTemplate();
+    }
+
+    @Benchmark
+    public Request apply() {
+        return target.apply(newTemplate());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Request applyContended() {
+        return target.apply(newTemplate());
+    }
+
+    @Benchmark
+    public String url() {
+        return target.url();
+    }
+
+    @Benchmark
+    public Optional<ServiceNode<ShardInfo>> getNode() {
+        return client.getNode();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Optional<ServiceNode<ShardInfo>> getNodeContended() {
+        return client.getNode();
+    }
+
+    @Benchmark
+    public List<ServiceNode<ShardInfo>> getAllNodes() {
+        return client.getAllNodes();
+    }
+}
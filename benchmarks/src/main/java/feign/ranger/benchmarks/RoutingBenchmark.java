@@ -0,0 +1,131 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.flipkart.ranger.model.ServiceNode;
+import feign.ranger.client.NodeDeserializer;
+import feign.ranger.common.ShardInfo;
+import feign.ranger.routing.BaseUrls;
+import feign.ranger.routing.RoutingEntry;
+import feign.ranger.routing.RoutingTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of node selection, routing table rebuilds and node deserialization for large node sets. Nodes are synthetic
+ * so that sizes well beyond what can be registered in an in-process zookeeper can be measured.
+ *
+ * @author phaneesh
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoutingBenchmark {
+
+    @Param({"1", "10", "100", "1000", "10000"})
+    public int nodes;
+
+    private List<byte[]> payloads;
+
+    private List<ServiceNode<ShardInfo>> serviceNodes;
+
+    private NodeDeserializer deserializer;
+
+    private RoutingTable table;
+
+    private BaseUrls baseUrls;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        deserializer = new NodeDeserializer(objectMapper);
+        payloads = new ArrayList<>(nodes);
+        serviceNodes = new ArrayList<>(nodes);
+        for (int i = 0; i < nodes; i++) {
+            ObjectNode node = objectMapper.createObjectNode();
+            node.put("host", "10.0." + (i / 256) + "." + (i % 256));
+            node.put("port", 8080);
+            node.putObject("nodeData").put("environment", BenchmarkCluster.ENVIRONMENT);
+            node.put("healthcheckStatus", "healthy");
+            node.put("lastUpdatedTimeStamp", System.currentTimeMillis());
+            byte[] payload = objectMapper.writeValueAsBytes(node);
+            payloads.add(payload);
+            serviceNodes.add(deserializer.deserialize(payload));
+        }
+        table = RoutingTable.of(serviceNodes);
+        baseUrls = BaseUrls.of(table, "http", "/apis");
+    }
+
+    @Benchmark
+    public RoutingEntry select() {
+        return table.random();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public RoutingEntry selectContended() {
+        return table.random();
+    }
+
+    @Benchmark
+    public String selectUrl() {
+        return baseUrls.get(table.random());
+    }
+
+    @Benchmark
+    public boolean detectChange() {
+        return table.hasSameNodes(serviceNodes);
+    }
+
+    @Benchmark
+    public RoutingTable rebuild() {
+        return RoutingTable.of(serviceNodes);
+    }
+
+    @Benchmark
+    public ServiceNode<ShardInfo> deserializeNode() {
+        return deserializer.deserialize(payloads.get(0));
+    }
+
+    @Benchmark
+    public void deserializeAll(Blackhole blackhole) {
+        for (byte[] payload : payloads) {
+            blackhole.consume(deserializer.deserialize(payload));
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger;
+
+import com.flipkart.ranger.model.ServiceNode;
+import com.google.common.base.Strings;
+import feign.ranger.common.ShardInfo;
+import feign.ranger.routing.RoutingEntry;
+import feign.ranger.routing.RoutingTable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Static addresses used when discovery has no nodes for a service. The addresses form a {@link RoutingTable} of their
+ * own, so they are balanced by the target's node selector like discovered nodes.
+ *
+ * @author phaneesh
+ */
+final class FallbackPool {
+
+    static final FallbackPool EMPTY = new FallbackPool(RoutingTable.EMPTY, new String[0]);
+
+    private final RoutingTable table;
+
+    private final String[] urls;
+
+    private FallbackPool(RoutingTable table, String[] urls) {
+        this.table = table;
+        this.urls = urls;
+    }
+
+    /**
+     * @param addresses host and port pairs; the port defaults to the scheme's when left out
+     */
+    static FallbackPool of(List<String> addresses, String environment, String httpScheme, String rootPathPrefix) {
+        Set<String> unique = new LinkedHashSet<>();
+        for (String address : addresses) {
+            if (!Strings.isNullOrEmpty(address)) {
+                unique.add(address.trim());
+            }
+        }
+        if (unique.isEmpty()) {
+            return EMPTY;
+        }
+        int defaultPort = "https".equals(httpScheme) ? 443 : 80;
+        List<ServiceNode<ShardInfo>> nodes = new ArrayList<>(unique.size());
+        String[] urls = new String[unique.size()];
+        int i = 0;
+        for (String address : unique) {
+            int separator = address.lastIndexOf(':');
+            String host = separator < 0 ? address : address.substring(0, separator);
+            int port = separator < 0 ? defaultPort : Integer.parseInt(address.substring(separator + 1));
+            nodes.add(new ServiceNode<>(host, port, ShardInfo.builder().environment(environment).build()));
+            urls[i++] = String.format("%s://%s%s", httpScheme, address, rootPathPrefix);
+        }
+        return new FallbackPool(RoutingTable.of(nodes), urls);
+    }
+
+    RoutingTable table() {
+        return table;
+    }
+
+    boolean isEmpty() {
+        return table.isEmpty();
+    }
+
+    /**
+     * @return the base url of the given entry of this pool's table, as configured
+     */
+    String url(RoutingEntry entry) {
+        return urls[entry.getIndex()];
+    }
+}
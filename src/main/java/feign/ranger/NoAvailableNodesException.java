@@ -0,0 +1,42 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger;
+
+import lombok.Getter;
+
+/**
+ * Thrown, without a stack trace, when a request cannot be routed because discovery has no nodes for the service and
+ * no fallback address is configured. Extends {@link IllegalArgumentException} for callers that already handle the
+ * "No service nodes found" error.
+ *
+ * @author phaneesh
+ */
+@Getter
+public class NoAvailableNodesException extends IllegalArgumentException {
+
+    private final String service;
+
+    public NoAvailableNodesException(String service) {
+        super("No service nodes found for " + service);
+        this.service = service;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit that opens when a request finds no nodes at all. While it is open requests fail fast, without waiting for
+ * discovery to start or running node selection, unless discovery has published nodes in the meantime. The open window
+ * starts at 100ms and doubles every time it expires with the service still unavailable, up to the configured maximum.
+ *
+ * @author phaneesh
+ */
+final class NoNodesBackoff {
+
+    private static final long INITIAL_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final long initialWindowNanos;
+
+    private final long maxWindowNanos;
+
+    private volatile long window;
+
+    private volatile long openUntil;
+
+    NoNodesBackoff(long maxWindowMs) {
+        this.maxWindowNanos = TimeUnit.MILLISECONDS.toNanos(maxWindowMs);
+        this.initialWindowNanos = Math.min(INITIAL_WINDOW_NANOS, maxWindowNanos);
+    }
+
+    boolean isOpen() {
+        return window != 0 && openUntil - System.nanoTime() > 0;
+    }
+
+    void open() {
+        if (maxWindowNanos <= 0 || isOpen()) {
+            return;
+        }
+        long current = window;
+        long next = current == 0 ? initialWindowNanos : Math.min(current * 2, maxWindowNanos);
+        openUntil = System.nanoTime() + next;
+        window = next;
+    }
+
+    void close() {
+        if (window != 0) {
+            window = 0;
+        }
+    }
+}
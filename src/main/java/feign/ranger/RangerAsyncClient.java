@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger;
+
+import feign.AsyncClient;
+import feign.Request;
+import feign.Response;
+import feign.ranger.limit.ConcurrencyLimitExceededException;
+import feign.ranger.limit.ConcurrencyLimiter;
+import feign.ranger.routing.NodeStats;
+import feign.ranger.routing.RoutingEntry;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous counterpart of {@link RangerClient}. Requests are accounted against their node until the returned
+ * future completes, so no thread is held while a request is in flight. Requests over the concurrency limit complete
+ * exceptionally with a {@link ConcurrencyLimitExceededException}.
+ *
+ * @author phaneesh
+ */
+public class RangerAsyncClient<C> implements AsyncClient<C> {
+
+    private final RangerTarget<?> target;
+
+    private final AsyncClient<C> delegate;
+
+    RangerAsyncClient(RangerTarget<?> target, AsyncClient<C> delegate) {
+        this.target = target;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public CompletableFuture<Response> execute(Request request, Request.Options options, Optional<C> requestContext) {
+        RoutingEntry entry = target.entryFor(request.url());
+        ConcurrencyLimiter limiter = target.getLimiter();
+        if (entry == null && limiter == null) {
+            return delegate.execute(request, options, requestContext);
+        }
+        if (limiter != null) {
+            try {
+                limiter.acquire(entry);
+            } catch (ConcurrencyLimitExceededException e) {
+                CompletableFuture<Response> rejected = new CompletableFuture<>();
+                rejected.completeExceptionally(e);
+                return rejected;
+            }
+        }
+        if (entry != null) {
+            entry.getStats().requestStarted();
+        }
+        long start = System.nanoTime();
+        CompletableFuture<Response> response;
+        try {
+            response = delegate.execute(request, options, requestContext);
+        } catch (RuntimeException e) {
+            finish(entry, limiter, start, null);
+            throw e;
+        }
+        return response.whenComplete((result, error) -> finish(entry, limiter, start, error == null ? result : null));
+    }
+
+    /**
+     * @param response the response, or null if the request failed
+     */
+    private void finish(RoutingEntry entry, ConcurrencyLimiter limiter, long start, Response response) {
+        long latency = System.nanoTime() - start;
+        boolean success = response != null && response.status() < 500;
+        if (limiter != null) {
+            limiter.release(entry, latency, response == null || ConcurrencyLimiter.isOverload(response.status()));
+        }
+        if (entry != null) {
+            NodeStats stats = entry.getStats();
+            stats.recordLatency(latency);
+            stats.requestFinished();
+            target.reportResult(entry, latency, success);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger;
+
+import feign.Client;
+import feign.Request;
+import feign.Response;
+import feign.ranger.limit.ConcurrencyLimiter;
+import feign.ranger.routing.NodeStats;
+import feign.ranger.routing.RoutingEntry;
+
+import java.io.IOException;
+
+/**
+ * Feign client decorator that tracks requests in flight, response times and failures of every discovered node of a
+ * {@link RangerTarget}, and enforces the target's concurrency limits. Connection errors, timeouts and 5xx responses are
+ * reported as failures; only connection errors, timeouts, 429 and 503 shrink the concurrency limits.
+ *
+ * @author phaneesh
+ */
+public class RangerClient implements Client {
+
+    private final RangerTarget<?> target;
+
+    private final Client delegate;
+
+    RangerClient(RangerTarget<?> target, Client delegate) {
+        this.target = target;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Response execute(Request request, Request.Options options) throws IOException {
+        RoutingEntry entry = target.entryFor(request.url());
+        ConcurrencyLimiter limiter = target.getLimiter();
+        if (entry == null && limiter == null) {
+            return delegate.execute(request, options);
+        }
+        if (limiter != null) {
+            limiter.acquire(entry);
+        }
+        if (entry != null) {
+            entry.getStats().requestStarted();
+        }
+        long start = System.nanoTime();
+        boolean success = false;
+        boolean dropped = true;
+        try {
+            Response response = delegate.execute(request, options);
+            success = response.status() < 500;
+            dropped = ConcurrencyLimiter.isOverload(response.status());
+            return response;
+        } finally {
+            long latency = System.nanoTime() - start;
+            if (limiter != null) {
+                limiter.release(entry, latency, dropped);
+            }
+            if (entry != null) {
+                NodeStats stats = entry.getStats();
+                stats.recordLatency(latency);
+                stats.requestFinished();
+                target.reportResult(entry, latency, success);
+            }
+        }
+    }
+}
@@ -17,13 +17,38 @@
 package feign.ranger;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.flipkart.ranger.model.ServiceNode;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import feign.AsyncClient;
+import feign.Client;
 import feign.Request;
 import feign.RequestTemplate;
+import feign.Retryer;
 import feign.Target;
+import feign.ranger.client.DiscoveryClientRegistry;
+import feign.ranger.client.DiscoveryCluster;
+import feign.ranger.client.Locality;
+import feign.ranger.client.NodeDiscovery;
+import feign.ranger.client.OutlierDetection;
+import feign.ranger.client.RefreshMode;
 import feign.ranger.client.ServiceDiscoveryClient;
-import feign.ranger.common.ShardInfo;
+import feign.ranger.client.TieredNodeDiscovery;
+import feign.ranger.http.Http2NodeClient;
+import feign.ranger.http.NodePoolSettings;
+import feign.ranger.http.PooledNodeClient;
+import feign.ranger.limit.ConcurrencyLimiter;
+import feign.ranger.limit.ConcurrencyLimits;
+import feign.ranger.metrics.RangerMetrics;
+import feign.ranger.retry.RangerRetryer;
+import feign.ranger.retry.RetryBudget;
+import feign.ranger.routing.BaseUrls;
+import feign.ranger.routing.NodeSelector;
+import feign.ranger.routing.RandomNodeSelector;
+import feign.ranger.routing.RoutingEntry;
+import feign.ranger.routing.RoutingTable;
+import feign.ranger.routing.SlowStart;
+import feign.ranger.routing.SlowStartNodeSelector;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.NonNull;
@@ -31,11 +56,33 @@ import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.apache.curator.framework.CuratorFramework;
 
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
+ * Targets of the same service share one discovery client through the {@link DiscoveryClientRegistry}; close a
+ * target when it is no longer used so the client can be stopped once nothing refers to it.
+ *
  * @author phaneesh
  */
 @Slf4j
-public class RangerTarget<T> implements Target<T> {
+public class RangerTarget<T> implements Target<T>, Closeable {
+
+    private static final long DEFAULT_NO_NODES_BACKOFF_MS = 1000;
 
     @NonNull
     private final Class<T> type;
@@ -43,33 +90,75 @@ public class RangerTarget<T> implements Target<T> {
     @Getter
     private final String service;
 
-    private final CuratorFramework curator;
+    private final List<DiscoveryClientRegistry.Key> clientKeys = new ArrayList<>();
+
+    private final List<ServiceDiscoveryClient> clients = new ArrayList<>();
+
+    private final NodeDiscovery client;
 
-    private ServiceDiscoveryClient client;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private final long startupWaitNanos;
+
+    private final AtomicLong startupDeadline = new AtomicLong();
 
     private final String httpScheme;
 
-    private final String fallbackUrl;
+    private final FallbackPool fallback;
+
+    private final NoNodesBackoff noNodes;
 
     private final String rootPathPrefix;
 
+    private final NodeSelector nodeSelector;
+
+    private final RetryBudget retryBudget;
+
+    private final RangerMetrics metrics;
+
+    @Getter
+    private final ConcurrencyLimiter limiter;
+
+    private final Cache<RequestTemplate, Set<String>> attemptedNodes = CacheBuilder.newBuilder()
+            .weakKeys()
+            .expireAfterAccess(1, TimeUnit.MINUTES)
+            .build();
+
+    private volatile BaseUrls baseUrls = BaseUrls.EMPTY;
+
     public RangerTarget(final Class<T> type, final String environment, final String namespace, final String service,
                         final CuratorFramework curator, final boolean secured,
                         final ObjectMapper objectMapper) throws Exception {
-        this(type, environment, namespace, service, curator, secured, null, objectMapper, null);
+        this(type, environment, namespace, service, curator, secured, null, objectMapper, null, null, 0, 0, null, null, null, null, 0, false, 0, null, null, null, null, 0, null, 0, null);
     }
 
     public RangerTarget(final Class<T> type, final String environment, final String namespace, final String service,
                         final CuratorFramework curator, final boolean secured, final String fallbackAddress,
                         final ObjectMapper objectMapper) throws Exception {
-        this(type, environment, namespace, service, curator, secured, fallbackAddress, objectMapper, null);
+        this(type, environment, namespace, service, curator, secured, fallbackAddress, objectMapper, null, null, 0, 0, null, null, null, null, 0, false, 0, null, null, null, null, 0, null, 0, null);
     }
 
     @Builder
     private RangerTarget(final Class<T> type, final String environment, final String namespace, final String service,
                         final CuratorFramework curator, final boolean secured, final String fallbackAddress,
-                        final ObjectMapper objectMapper, String rootPathPrefix) throws Exception {
+                        final ObjectMapper objectMapper, String rootPathPrefix, final RefreshMode refreshMode,
+                        final long nodeRefreshIntervalMs, final long refreshDebounceMs,
+                        final NodeSelector nodeSelector, final OutlierDetection outlierDetection,
+                        final RetryBudget retryBudget, final Path snapshotPath,
+                        final long snapshotMaxAgeMs, final boolean asyncStart,
+                        final long startupWaitMs, final Locality locality,
+                        final RangerMetrics metrics, final ConcurrencyLimits concurrencyLimits,
+                        final List<String> fallbackAddresses, final long noNodesBackoffMs,
+                        final List<DiscoveryCluster> clusters, final int failoverThreshold,
+                        final SlowStart slowStart) throws Exception {
         this.type = type;
+        NodeSelector selector = nodeSelector != null ? nodeSelector : new RandomNodeSelector();
+        this.nodeSelector = slowStart != null ? new SlowStartNodeSelector(selector, slowStart) : selector;
+        this.retryBudget = retryBudget != null ? retryBudget : RetryBudget.defaultBudget();
+        this.metrics = metrics != null ? metrics : RangerMetrics.NOOP;
+        this.limiter = concurrencyLimits != null
+                ? new ConcurrencyLimiter(service, concurrencyLimits, this.metrics) : null;
+        this.startupWaitNanos = TimeUnit.MILLISECONDS.toNanos(startupWaitMs);
         if (secured) {
             this.httpScheme = "https";
         } else {
@@ -82,22 +171,79 @@ public class RangerTarget<T> implements Target<T> {
             this.rootPathPrefix = "/" + rootPathPrefix;
         }
 
-        if (Strings.isNullOrEmpty(fallbackAddress)) {
-            this.fallbackUrl = "";
-        } else {
-            this.fallbackUrl = String.format("%s://%s%s", this.httpScheme, fallbackAddress, this.rootPathPrefix);
+        val addresses = new ArrayList<String>();
+        if (!Strings.isNullOrEmpty(fallbackAddress)) {
+            addresses.add(fallbackAddress);
         }
+        if (fallbackAddresses != null) {
+            addresses.addAll(fallbackAddresses);
+        }
+        this.fallback = FallbackPool.of(addresses, environment, this.httpScheme, this.rootPathPrefix);
+        this.noNodes = new NoNodesBackoff(noNodesBackoffMs > 0 ? noNodesBackoffMs : DEFAULT_NO_NODES_BACKOFF_MS);
 
         this.service = service;
-        this.curator = curator;
-        client = ServiceDiscoveryClient.builder()
+        val primary = DiscoveryCluster.builder()
                 .curator(curator)
-                .environment(environment)
                 .namespace(namespace)
-                .serviceName(service)
-                .objectMapper(objectMapper)
+                .environment(environment)
+                .priority(0)
                 .build();
-        start();
+        val members = new ArrayList<DiscoveryCluster>();
+        members.add(primary);
+        if (clusters != null) {
+            for (DiscoveryCluster cluster : clusters) {
+                members.add(DiscoveryCluster.builder()
+                        .curator(cluster.getCurator() != null ? cluster.getCurator() : curator)
+                        .namespace(cluster.getNamespace() != null ? cluster.getNamespace() : namespace)
+                        .environment(cluster.getEnvironment() != null ? cluster.getEnvironment() : environment)
+                        .priority(cluster.getPriority())
+                        .build());
+            }
+        }
+        members.sort(Comparator.comparingInt(DiscoveryCluster::getPriority));
+        val tiers = new ArrayList<List<ServiceDiscoveryClient>>();
+        Integer tierPriority = null;
+        try {
+            for (DiscoveryCluster cluster : members) {
+                // Only the primary cluster keeps a snapshot, the others would overwrite it
+                val key = DiscoveryClientRegistry.Key.builder()
+                        .curator(cluster.getCurator())
+                        .namespace(cluster.getNamespace())
+                        .service(service)
+                        .environment(cluster.getEnvironment())
+                        .objectMapper(objectMapper)
+                        .settings(Arrays.asList(refreshMode, nodeRefreshIntervalMs, refreshDebounceMs, outlierDetection,
+                                cluster == primary ? snapshotPath : null, snapshotMaxAgeMs, locality, metrics))
+                        .build();
+                val started = start(key, asyncStart, () -> ServiceDiscoveryClient.builder()
+                        .curator(cluster.getCurator())
+                        .environment(cluster.getEnvironment())
+                        .namespace(cluster.getNamespace())
+                        .serviceName(service)
+                        .objectMapper(objectMapper)
+                        .refreshMode(refreshMode)
+                        .nodeRefreshIntervalMs(nodeRefreshIntervalMs)
+                        .refreshDebounceMs(refreshDebounceMs)
+                        .outlierDetection(outlierDetection)
+                        .snapshotPath(cluster == primary ? snapshotPath : null)
+                        .snapshotMaxAgeMs(snapshotMaxAgeMs)
+                        .locality(locality)
+                        .metrics(metrics)
+                        .build());
+                clientKeys.add(key);
+                clients.add(started);
+                if (tierPriority == null || tierPriority != cluster.getPriority()) {
+                    tiers.add(new ArrayList<>());
+                    tierPriority = cluster.getPriority();
+                }
+                tiers.get(tiers.size() - 1).add(started);
+            }
+        } catch (Exception e) {
+            release();
+            throw e;
+        }
+        this.client = clients.size() == 1
+                ? clients.get(0) : new TieredNodeDiscovery(service, tiers, failoverThreshold);
     }
 
     @Override
@@ -110,35 +256,242 @@ public class RangerTarget<T> implements Target<T> {
         return service;
     }
 
-    private String rangerUrl(ServiceNode<ShardInfo> node) {
-        return String.format("%s://%s:%d%s", httpScheme, node.getHost(), node.getPort(), rootPathPrefix);
+    private String rangerUrl(RoutingTable table, RoutingEntry entry) {
+        if (table == fallback.table()) {
+            return fallback.url(entry);
+        }
+        BaseUrls current = baseUrls;
+        if (!current.covers(table)) {
+            current = BaseUrls.of(table, httpScheme, rootPathPrefix);
+            baseUrls = current;
+        }
+        return current.get(entry);
     }
 
     @Override
     public String url() {
-        val node = client.getNode();
-        if(node.isPresent()) {
-            return rangerUrl(node.get());
+        val table = availableNodes();
+        val entry = table.isEmpty() ? null : nodeSelector.select(table);
+        if(entry == null) {
+            throw noNodesFound();
         }
-        if(Strings.isNullOrEmpty(fallbackUrl)) {
-            throw new IllegalArgumentException("No service nodes found");
+        noNodes.close();
+        return rangerUrl(table, entry);
+    }
+
+    /**
+     * @return the discovered nodes, or the fallback pool when discovery has none
+     */
+    private RoutingTable availableNodes() {
+        val table = noNodes.isOpen() ? client.routingTable() : routingTable();
+        return table.isEmpty() ? fallback.table() : table;
+    }
+
+    private NoAvailableNodesException noNodesFound() {
+        noNodes.open();
+        metrics.onNoNodes(service);
+        return new NoAvailableNodesException(service);
+    }
+
+    /**
+     * Wraps the given feign client so that requests are accounted against the node they are sent to. Required by
+     * selection strategies that look at in-flight requests.
+     */
+    public RangerClient client(Client delegate) {
+        return new RangerClient(this, delegate);
+    }
+
+    /**
+     * Wraps the given asynchronous feign client so that requests are accounted against the node they are sent to
+     * until their response future completes.
+     */
+    public <C> RangerAsyncClient<C> asyncClient(AsyncClient<C> delegate) {
+        return new RangerAsyncClient<>(this, delegate);
+    }
+
+    /**
+     * Creates a feign client with a connection pool per discovered node of this target's service. Pools are opened
+     * and closed as nodes join and leave; close the client when it is no longer used. Needs {@code feign-httpclient}.
+     */
+    public PooledNodeClient pooledClient(NodePoolSettings settings) {
+        return new PooledNodeClient(client, httpScheme, settings != null ? settings : NodePoolSettings.builder().build());
+    }
+
+    /**
+     * Creates a feign client that talks HTTP/2 to the discovered nodes of this target's service, one multiplexed
+     * connection per node, and falls back to HTTP/1.1 for nodes that do not support it.
+     */
+    public Http2NodeClient http2Client() {
+        return new Http2NodeClient(client);
+    }
+
+    /**
+     * @return the discovered node the given absolute request url points to, or null
+     */
+    public RoutingEntry entryFor(String url) {
+        return client.membership().findByUrl(url);
+    }
+
+    /**
+     * @return a copy of the given request routed to another discovered node, or null if there is no other node
+     */
+    public Request reroute(Request request) {
+        RoutingEntry current = client.membership().findByUrl(request.url());
+        if (current == null) {
+            return null;
+        }
+        String currentUrl = current.baseUrl(httpScheme, rootPathPrefix);
+        if (!request.url().startsWith(currentUrl)) {
+            return null;
+        }
+        RoutingTable table = client.routingTable();
+        RoutingEntry other = selectExcluding(table, Collections.singleton(current.getAuthority()));
+        if (other == null || other.getAuthority().equals(current.getAuthority())) {
+            return null;
         }
-        return fallbackUrl;
+        return Request.create(request.httpMethod(),
+                rangerUrl(table, other) + request.url().substring(currentUrl.length()),
+                request.headers(), request.body(), request.charset(), request.requestTemplate());
     }
 
-    private void start() throws Exception {
+    /**
+     * Reports the outcome of a request sent to a discovered node.
+     */
+    public void reportResult(RoutingEntry entry, long latencyNanos, boolean success) {
+        client.reportResult(entry, success);
+        metrics.onResponse(service, entry, latencyNanos, success);
+    }
+
+    private ServiceDiscoveryClient start(DiscoveryClientRegistry.Key key, boolean async,
+                                         DiscoveryClientRegistry.ClientFactory factory) throws Exception {
+        val curator = key.getCurator();
         log.info("Starting service discovery client for {} on {}", service, curator.getZookeeperClient().getCurrentConnectionString());
-        client.start();
+        val started = DiscoveryClientRegistry.getInstance().acquire(key, factory, async);
         log.info("Started service discovery client for {} on {}", service, curator.getZookeeperClient().getCurrentConnectionString());
+        return started;
+    }
+
+    /**
+     * @return a future that completes when nodes of the service are available for routing
+     */
+    public CompletableFuture<Void> ready() {
+        return client.ready();
     }
 
+    /**
+     * Waits for discovery to report nodes when there are none yet. All callers share one deadline, set by the first
+     * call that had to wait, so a service that is slow to start delays requests by at most the configured wait.
+     */
+    private RoutingTable routingTable() {
+        RoutingTable table = client.routingTable();
+        if (!table.isEmpty() || startupWaitNanos <= 0) {
+            return table;
+        }
+        CompletableFuture<Void> ready = client.ready();
+        if (ready.isDone()) {
+            return table;
+        }
+        startupDeadline.compareAndSet(0, System.nanoTime() + startupWaitNanos);
+        long remaining = startupDeadline.get() - System.nanoTime();
+        if (remaining <= 0) {
+            return table;
+        }
+        try {
+            ready.get(remaining, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            log.debug("No nodes available for {} after waiting for discovery", service, e);
+        }
+        return client.routingTable();
+    }
+
+    /**
+     * Releases this target's references to the shared discovery clients.
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            if (client instanceof TieredNodeDiscovery) {
+                ((TieredNodeDiscovery) client).close();
+            }
+            release();
+        }
+    }
+
+    private void release() {
+        for (int i = 0; i < clients.size(); i++) {
+            DiscoveryClientRegistry.getInstance().release(clientKeys.get(i), clients.get(i));
+        }
+    }
+
+    /**
+     * Wraps the given retryer so that retries are limited by this target's retry budget, and are routed to a node the
+     * call has not tried yet while there is one.
+     */
+    public RangerRetryer retryer(Retryer delegate) {
+        return new RangerRetryer(retryBudget, delegate, this::onRetry);
+    }
+
+    /**
+     * Feign reuses the same template for every attempt of a call, so the nodes already tried are remembered by
+     * template for {@link #apply(RequestTemplate)} to exclude.
+     */
+    private void onRetry(Request failed) {
+        RequestTemplate template = failed.requestTemplate();
+        String authority = RoutingTable.authorityOf(failed.url());
+        if (template != null && authority != null) {
+            attemptedNodes.asMap().computeIfAbsent(template, key -> ConcurrentHashMap.newKeySet()).add(authority);
+        }
+    }
+
+    /**
+     * Routes the request to a discovered node, or to one of the fallback addresses when discovery has none. Fails
+     * with a {@link NoAvailableNodesException} when there is neither; requests that follow such a failure fail fast
+     * for a short, growing window unless nodes are discovered in the meantime.
+     */
     public Request apply(RequestTemplate input) {
-        val node = client.getNode();
-        if(node == null || !node.isPresent()) {
-            throw new IllegalArgumentException("No service nodes found");
+        val table = availableNodes();
+        RoutingEntry entry = null;
+        if (!table.isEmpty()) {
+            Set<String> attempted = attemptedNodes.getIfPresent(input);
+            entry = attempted == null ? selectForRequest(table, input) : selectExcluding(table, attempted);
         }
-        val url = rangerUrl(node.get());
-        input.insert(0, url);
+        if(entry == null) {
+            throw noNodesFound();
+        }
+        noNodes.close();
+        metrics.onSelection(service, entry);
+        input.insert(0, rangerUrl(table, entry));
         return input.request();
     }
+
+    private RoutingEntry selectForRequest(RoutingTable table, RequestTemplate input) {
+        retryBudget.onRequest();
+        return nodeSelector.select(table, input);
+    }
+
+    /**
+     * @return a node not in the excluded set, or any node if all of them are excluded
+     */
+    RoutingEntry selectExcluding(RoutingTable table, Set<String> excluded) {
+        for (int i = 0; i < 3; i++) {
+            RoutingEntry entry = nodeSelector.select(table);
+            if (entry == null || !excluded.contains(entry.getAuthority())) {
+                return entry;
+            }
+        }
+        int size = table.size();
+        if (size == 0) {
+            return null;
+        }
+        int offset = ThreadLocalRandom.current().nextInt(size);
+        for (int i = 0; i < size; i++) {
+            RoutingEntry entry = table.get((offset + i) % size);
+            if (!excluded.contains(entry.getAuthority())) {
+                return entry;
+            }
+        }
+        return nodeSelector.select(table);
+    }
 }
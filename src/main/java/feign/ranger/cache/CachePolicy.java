@@ -0,0 +1,57 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Limits of a {@link CachingClient}'s response cache and the methods it applies to.
+ *
+ * @author phaneesh
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class CachePolicy {
+
+    /**
+     * Total size of cached response bodies and keys. Least recently used responses are evicted beyond it.
+     */
+    @Builder.Default
+    private long maximumWeightBytes = 32L * 1024 * 1024;
+
+    /**
+     * Responses with larger bodies are streamed to the caller as they arrive; they are never buffered, cached or
+     * shared with concurrent identical requests.
+     */
+    @Builder.Default
+    private int maximumEntryBytes = 1024 * 1024;
+
+    /**
+     * Settings by feign config key (for example {@code TestApi#test()}), for methods that are not annotated with
+     * {@link Cached} or to override the annotation.
+     */
+    @Builder.Default
+    private Map<String, MethodCaching> methods = Collections.emptyMap();
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.cache;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an idempotent GET feign method whose responses may be shared by a {@link CachingClient}.
+ *
+ * @author phaneesh
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Cached {
+
+    /**
+     * Share one upstream call between concurrent identical requests.
+     */
+    boolean coalesce() default true;
+
+    /**
+     * Keep successful responses for the time allowed by their {@code Cache-Control} header, or for {@link #ttlMs()}
+     * when they have none.
+     */
+    boolean cache() default true;
+
+    /**
+     * Time to keep responses without a {@code Cache-Control} max age; 0 caches only responses that have one.
+     */
+    long ttlMs() default 0;
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import feign.Client;
+import feign.MethodMetadata;
+import feign.Request;
+import feign.RequestTemplate;
+import feign.Response;
+import feign.Util;
+import feign.ranger.routing.RoutingTable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Feign client decorator for idempotent GETs of a single target. Concurrent identical requests share one upstream
+ * call, and successful responses are kept in a size bounded cache for as long as their {@code Cache-Control} header
+ * (or the method's configured time to live) allows. Requests are identical when they have the same path, query and
+ * headers, whichever node they were routed to. Only methods annotated with {@link Cached} or listed in the
+ * {@link CachePolicy} are affected; wrap the client returned by {@link feign.ranger.RangerTarget#client(Client)} so
+ * that cache hits are not counted against nodes.
+ *
+ * @author phaneesh
+ */
+public class CachingClient implements Client {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Client delegate;
+
+    private final CachePolicy policy;
+
+    private final Cache<String, CachedResponse> cache;
+
+    private final ConcurrentMap<String, CompletableFuture<CachedResponse>> inFlight = new ConcurrentHashMap<>();
+
+    private final Map<MethodMetadata, Optional<MethodCaching>> methods = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder coalesced = new LongAdder();
+
+    public CachingClient(Client delegate, CachePolicy policy) {
+        this.delegate = delegate;
+        this.policy = policy;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(policy.getMaximumWeightBytes())
+                .weigher((String key, CachedResponse value) -> key.length() * 2 + value.weight())
+                .build();
+    }
+
+    @Override
+    public Response execute(Request request, Request.Options options) throws IOException {
+        MethodCaching caching = request.httpMethod() == Request.HttpMethod.GET ? caching(request) : null;
+        if (caching == null || !(caching.isCache() || caching.isCoalesce())) {
+            return delegate.execute(request, options);
+        }
+        String key = key(request);
+        boolean revalidate = hasDirective(request.headers(), "no-cache") || hasDirective(request.headers(), "no-store");
+        if (caching.isCache() && !revalidate) {
+            CachedResponse cached = cache.getIfPresent(key);
+            if (cached != null && cached.isFresh(System.currentTimeMillis())) {
+                hits.increment();
+                return cached.toResponse(request);
+            }
+            if (cached != null) {
+                cache.asMap().remove(key, cached);
+            }
+        }
+        if (!caching.isCoalesce()) {
+            misses.increment();
+            return fetch(key, request, options, caching).toResponse(request);
+        }
+        CompletableFuture<CachedResponse> call = new CompletableFuture<>();
+        CompletableFuture<CachedResponse> leader = inFlight.putIfAbsent(key, call);
+        if (leader != null) {
+            CachedResponse shared;
+            try {
+                shared = await(leader, options);
+            } catch (TimeoutException e) {
+                // The leader is taking longer than this caller's read timeout, so it calls the node on its own
+                misses.increment();
+                return delegate.execute(request, options);
+            }
+            if (shared == null) {
+                // The leader's body was too large to buffer, so it could not be shared
+                misses.increment();
+                return delegate.execute(request, options);
+            }
+            coalesced.increment();
+            return shared.toResponse(request);
+        }
+        misses.increment();
+        try {
+            Fetched fetched = fetch(key, request, options, caching);
+            call.complete(fetched.buffered);
+            return fetched.toResponse(request);
+        } catch (IOException | RuntimeException | Error e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    /**
+     * Calls the delegate and buffers the response body. A body larger than the policy's maximum entry size, by its
+     * {@code Content-Length} or by the bytes read so far, is not buffered: the response is streamed to the caller and
+     * neither cached nor shared.
+     */
+    private Fetched fetch(String key, Request request, Request.Options options, MethodCaching caching)
+            throws IOException {
+        Response upstream = delegate.execute(request, options);
+        byte[] body = null;
+        if (upstream.body() != null) {
+            Integer length = upstream.body().length();
+            if (length != null && length > policy.getMaximumEntryBytes()) {
+                return new Fetched(null, upstream);
+            }
+            InputStream stream = upstream.body().asInputStream();
+            try {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream(length != null ? length : BUFFER_SIZE);
+                byte[] chunk = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = stream.read(chunk)) != -1) {
+                    buffer.write(chunk, 0, read);
+                    if (buffer.size() > policy.getMaximumEntryBytes()) {
+                        InputStream rest = new SequenceInputStream(
+                                new ByteArrayInputStream(buffer.toByteArray()), stream);
+                        return new Fetched(null, upstream.toBuilder().body(rest, null).build());
+                    }
+                }
+                body = buffer.toByteArray();
+            } catch (IOException | RuntimeException | Error e) {
+                Util.ensureClosed(upstream);
+                throw e;
+            }
+            Util.ensureClosed(upstream);
+        }
+        long ttl = caching.isCache() ? ttlMs(upstream.headers(), caching) : 0;
+        CachedResponse response = new CachedResponse(upstream.status(), upstream.reason(), upstream.headers(), body,
+                System.currentTimeMillis() + ttl);
+        if (ttl > 0 && upstream.status() == 200) {
+            cache.put(key, response);
+        }
+        return new Fetched(response, null);
+    }
+
+    /**
+     * Waits for the leader's response for no longer than the caller's own read timeout.
+     */
+    private static CachedResponse await(CompletableFuture<CachedResponse> leader, Request.Options options)
+            throws IOException, TimeoutException {
+        try {
+            return leader.get(options.readTimeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private MethodCaching caching(Request request) {
+        RequestTemplate template = request.requestTemplate();
+        if (template == null || template.methodMetadata() == null) {
+            return null;
+        }
+        return methods.computeIfAbsent(template.methodMetadata(), this::caching).orElse(null);
+    }
+
+    private Optional<MethodCaching> caching(MethodMetadata metadata) {
+        MethodCaching configured = policy.getMethods().get(metadata.configKey());
+        if (configured != null) {
+            return Optional.of(configured);
+        }
+        Cached annotation = metadata.method() == null ? null : metadata.method().getAnnotation(Cached.class);
+        return annotation == null ? Optional.empty() : Optional.of(MethodCaching.of(annotation));
+    }
+
+    /**
+     * @return the request path, query and headers; the scheme and node address are left out
+     */
+    private static String key(Request request) {
+        String url = request.url();
+        String authority = RoutingTable.authorityOf(url);
+        StringBuilder key = new StringBuilder(url.length() + 64);
+        key.append(authority == null ? url : url.substring(url.indexOf(authority) + authority.length()));
+        for (Map.Entry<String, Collection<String>> header : request.headers().entrySet()) {
+            key.append('\n').append(header.getKey()).append(':').append(header.getValue());
+        }
+        return key.toString();
+    }
+
+    private static long ttlMs(Map<String, Collection<String>> headers, MethodCaching caching) {
+        Collection<String> values = headers.getOrDefault("Cache-Control", Collections.emptyList());
+        for (String value : values) {
+            for (String directive : value.split(",")) {
+                String trimmed = directive.trim().toLowerCase();
+                if (trimmed.equals("no-store") || trimmed.equals("no-cache")) {
+                    return 0;
+                }
+                if (trimmed.startsWith("max-age=")) {
+                    try {
+                        return TimeUnit.SECONDS.toMillis(Long.parseLong(trimmed.substring(8).trim()));
+                    } catch (NumberFormatException e) {
+                        return 0;
+                    }
+                }
+            }
+        }
+        return caching.getTtlMs();
+    }
+
+    private static boolean hasDirective(Map<String, Collection<String>> headers, String directive) {
+        Collection<String> values = headers.get("Cache-Control");
+        if (values == null) {
+            return false;
+        }
+        for (String value : values) {
+            if (value.toLowerCase().contains(directive)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long coalesced() {
+        return coalesced.sum();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    private static final class Fetched {
+
+        private final CachedResponse buffered;
+        private final Response streamed;
+
+        private Fetched(CachedResponse buffered, Response streamed) {
+            this.buffered = buffered;
+            this.streamed = streamed;
+        }
+
+        private Response toResponse(Request request) {
+            return buffered != null ? buffered.toResponse(request) : streamed;
+        }
+    }
+
+    private static final class CachedResponse {
+
+        private final int status;
+        private final String reason;
+        private final Map<String, Collection<String>> headers;
+        private final byte[] body;
+        private final long expiresAt;
+
+        private CachedResponse(int status, String reason, Map<String, Collection<String>> headers, byte[] body,
+                               long expiresAt) {
+            this.status = status;
+            this.reason = reason;
+            this.headers = headers;
+            this.body = body;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isFresh(long now) {
+            return now < expiresAt;
+        }
+
+        private int weight() {
+            return 64 + (body == null ? 0 : body.length);
+        }
+
+        private Response toResponse(Request request) {
+            return Response.builder()
+                    .status(status)
+                    .reason(reason)
+                    .headers(headers)
+                    .request(request)
+                    .body(body)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Coalescing and caching settings of a single feign method. See {@link Cached}.
+ *
+ * @author phaneesh
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class MethodCaching {
+
+    @Builder.Default
+    private boolean coalesce = true;
+
+    @Builder.Default
+    private boolean cache = true;
+
+    @Builder.Default
+    private long ttlMs = 0;
+
+    static MethodCaching of(Cached cached) {
+        return new MethodCaching(cached.coalesce(), cached.cache(), cached.ttlMs());
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.CuratorFramework;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Process wide registry of started {@link ServiceDiscoveryClient}s. Targets for the same service, environment and
+ * namespace on the same curator (and with the same object mapper and discovery settings) share one client, which is
+ * stopped when the last of them releases it.
+ *
+ * @author phaneesh
+ */
+@Slf4j
+public final class DiscoveryClientRegistry {
+
+    private static final DiscoveryClientRegistry INSTANCE = new DiscoveryClientRegistry();
+
+    private final ConcurrentMap<Key, Lease> leases = new ConcurrentHashMap<>();
+
+    private DiscoveryClientRegistry() {
+    }
+
+    public static DiscoveryClientRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the shared client for the key, creating and starting it with the factory if there is none.
+     */
+    public ServiceDiscoveryClient acquire(Key key, ClientFactory factory) throws Exception {
+        return acquire(key, factory, false);
+    }
+
+    /**
+     * Returns the shared client for the key, creating it with the factory if there is none. A new client is started
+     * in the background when {@code async} is set; see {@link ServiceDiscoveryClient#startAsync()}.
+     */
+    public ServiceDiscoveryClient acquire(Key key, ClientFactory factory, boolean async) throws Exception {
+        while (true) {
+            Lease lease = leases.computeIfAbsent(key, k -> new Lease());
+            synchronized (lease) {
+                if (lease.released) {
+                    continue;
+                }
+                if (lease.client == null) {
+                    try {
+                        ServiceDiscoveryClient client = factory.create();
+                        if (async) {
+                            client.startAsync();
+                        } else {
+                            client.start();
+                        }
+                        lease.client = client;
+                    } catch (Exception e) {
+                        lease.released = true;
+                        leases.remove(key, lease);
+                        throw e;
+                    }
+                }
+                lease.references++;
+                return lease.client;
+            }
+        }
+    }
+
+    /**
+     * Releases a client obtained from {@link #acquire}. The client is stopped once every holder has released it.
+     */
+    public void release(Key key, ServiceDiscoveryClient client) {
+        Lease lease = leases.get(key);
+        if (lease == null) {
+            return;
+        }
+        synchronized (lease) {
+            if (lease.client != client || --lease.references > 0) {
+                return;
+            }
+            lease.released = true;
+            leases.remove(key, lease);
+        }
+        try {
+            client.stop();
+            log.info("Stopped service discovery client for {}", key.getService());
+        } catch (Exception e) {
+            log.warn("Could not stop service discovery client for {}", key.getService(), e);
+        }
+    }
+
+    int references(Key key) {
+        Lease lease = leases.get(key);
+        return lease == null ? 0 : lease.references;
+    }
+
+    /**
+     * Identifies a discovery client. Curators and object mappers are compared by identity.
+     */
+    @Value
+    @Builder
+    public static class Key {
+
+        CuratorFramework curator;
+
+        String namespace;
+
+        String service;
+
+        String environment;
+
+        ObjectMapper objectMapper;
+
+        Object settings;
+    }
+
+    public interface ClientFactory {
+
+        ServiceDiscoveryClient create() throws Exception;
+    }
+
+    private static final class Lease {
+
+        private ServiceDiscoveryClient client;
+
+        private int references;
+
+        private boolean released;
+    }
+}
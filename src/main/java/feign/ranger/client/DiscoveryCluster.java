@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.client;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.apache.curator.framework.CuratorFramework;
+
+/**
+ * An additional ZooKeeper ensemble and/or environment the service is registered in. Clusters with a lower priority
+ * are preferred; the target's own curator and environment form the primary cluster with priority 0. Namespace and
+ * environment default to the target's.
+ *
+ * @author phaneesh
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class DiscoveryCluster {
+
+    private CuratorFramework curator;
+
+    private String namespace;
+
+    private String environment;
+
+    @Builder.Default
+    private int priority = 1;
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.client;
+
+import com.flipkart.ranger.ServiceFinderBuilders;
+import com.flipkart.ranger.finder.sharded.SimpleShardedServiceFinder;
+import com.flipkart.ranger.model.ServiceNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import feign.ranger.common.ShardInfo;
+import org.apache.curator.framework.CuratorFramework;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Node source backed by ranger's polling {@link SimpleShardedServiceFinder}. Ranger hands every znode payload to the
+ * deserializer on every refresh, so parsed nodes are cached by payload content, leaving out the heartbeat timestamp,
+ * and only new or modified payloads are parsed.
+ *
+ * @author phaneesh
+ */
+class FinderNodeSource implements NodeSource {
+
+    private static final int MAX_CACHED_PAYLOADS = 16384;
+
+    private final CuratorFramework curator;
+    private final ShardInfo criteria;
+    private final long syncIntervalMs;
+    private final SimpleShardedServiceFinder<ShardInfo> serviceFinder;
+    private final NodeDeserializer deserializer;
+    private final Cache<NodePayload, ServiceNode<ShardInfo>> parsed;
+
+    FinderNodeSource(CuratorFramework curator, String namespace, String serviceName, ShardInfo criteria,
+                     NodeDeserializer deserializer, long nodeRefreshIntervalMs, long syncIntervalMs) {
+        this.curator = curator;
+        this.criteria = criteria;
+        this.syncIntervalMs = syncIntervalMs;
+        this.deserializer = deserializer;
+        this.parsed = CacheBuilder.newBuilder()
+                .maximumSize(MAX_CACHED_PAYLOADS)
+                .expireAfterAccess(nodeRefreshIntervalMs * 2, TimeUnit.MILLISECONDS)
+                .build();
+        this.serviceFinder = ServiceFinderBuilders.<ShardInfo>shardedFinderBuilder()
+                .withCuratorFramework(curator)
+                .withNamespace(namespace)
+                .withServiceName(serviceName)
+                .withDisableWatchers(true)
+                .withNodeRefreshIntervalMs((int) nodeRefreshIntervalMs)
+                .withDeserializer(this::deserialize)
+                .build();
+    }
+
+    @Override
+    public void start(ScheduledExecutorService scheduler, Runnable onChange) throws Exception {
+        serviceFinder.start();
+        scheduler.scheduleWithFixedDelay(onChange, syncIntervalMs, syncIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() throws Exception {
+        serviceFinder.stop();
+    }
+
+    @Override
+    public List<ServiceNode<ShardInfo>> nodes() {
+        return serviceFinder.getAll(criteria);
+    }
+
+    /**
+     * Ranger does not report failed reads, so an empty node list is trusted while the finder is connected.
+     */
+    @Override
+    public boolean hasRead() {
+        return curator.getZookeeperClient().isConnected();
+    }
+
+    private ServiceNode<ShardInfo> deserialize(byte[] data) {
+        NodePayload payload = NodePayload.of(data);
+        ServiceNode<ShardInfo> node = parsed.getIfPresent(payload);
+        if (node != null) {
+            return payload.refresh(node);
+        }
+        node = deserializer.deserialize(data);
+        if (node != null) {
+            parsed.put(payload, node);
+        }
+        return node;
+    }
+}
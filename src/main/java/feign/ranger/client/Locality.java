@@ -0,0 +1,47 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.client;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Locality of the caller. Requests are routed to nodes in the same zone, then the same region, as long as enough of
+ * the local nodes are healthy; otherwise they spill over to every node. Nodes that do not publish a region or zone are
+ * only used when traffic spills over.
+ *
+ * @author phaneesh
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class Locality {
+
+    private String region;
+
+    private String zone;
+
+    /**
+     * Traffic stays local only while at least this share of the local nodes is routable. The local nodes expected
+     * are the discovered ones, or the locality's even share of the nodes around it if that is more.
+     */
+    @Builder.Default
+    private int minHealthyPercent = 70;
+}
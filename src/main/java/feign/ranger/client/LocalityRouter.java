@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.client;
+
+import com.flipkart.ranger.model.ServiceNode;
+import feign.ranger.common.ShardInfo;
+import feign.ranger.routing.RoutingTable;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Narrows a routing table down to the nodes closest to the caller. A locality keeps its traffic only while enough of
+ * the nodes expected there are routable: its discovered nodes, or its even share of the nodes around it if that is
+ * more, so a zone that loses most of its nodes from discovery spills over just like one whose nodes are ejected.
+ *
+ * @author phaneesh
+ */
+class LocalityRouter {
+
+    private final String region;
+    private final String zone;
+    private final int minHealthyPercent;
+
+    LocalityRouter(Locality locality) {
+        this.region = locality.getRegion();
+        this.zone = locality.getZone();
+        this.minHealthyPercent = locality.getMinHealthyPercent();
+    }
+
+    /**
+     * @param membership every discovered node
+     * @param routable   the discovered nodes that can currently be routed to
+     * @return the routable nodes of the closest locality that is healthy enough, or all routable nodes
+     */
+    RoutingTable prefer(RoutingTable membership, RoutingTable routable) {
+        if (zone != null) {
+            RoutingTable local = local(membership, routable, this::inZone, this::nearRegion, ShardInfo::getZone);
+            if (local != null) {
+                return local;
+            }
+        }
+        if (region != null) {
+            RoutingTable local = local(membership, routable, this::inRegion, data -> true, ShardInfo::getRegion);
+            if (local != null) {
+                return local;
+            }
+        }
+        return routable;
+    }
+
+    /**
+     * @param local    whether a node is in the preferred locality
+     * @param scope    whether a node is among the nodes the preferred locality is compared with
+     * @param locality the locality of a node at the level being compared
+     */
+    private RoutingTable local(RoutingTable membership, RoutingTable routable, Predicate<ShardInfo> local,
+                               Predicate<ShardInfo> scope, Function<ShardInfo, String> locality) {
+        int total = 0;
+        int scoped = 0;
+        Set<String> localities = new HashSet<>();
+        for (int i = 0; i < membership.size(); i++) {
+            ShardInfo data = membership.get(i).getNode().getNodeData();
+            if (data == null) {
+                continue;
+            }
+            if (local.test(data)) {
+                total++;
+            }
+            String name = locality.apply(data);
+            if (name != null && scope.test(data)) {
+                scoped++;
+                localities.add(name);
+            }
+        }
+        if (total == 0) {
+            return null;
+        }
+        int expected = Math.max(total, scoped / Math.max(1, localities.size()));
+        List<ServiceNode<ShardInfo>> healthy = new ArrayList<>(total);
+        for (int i = 0; i < routable.size(); i++) {
+            if (local.test(routable.get(i).getNode().getNodeData())) {
+                healthy.add(routable.get(i).getNode());
+            }
+        }
+        if (healthy.isEmpty() || healthy.size() * 100L < (long) expected * minHealthyPercent) {
+            return null;
+        }
+        return healthy.size() == routable.size() ? routable : RoutingTable.of(healthy, routable);
+    }
+
+    private boolean inZone(ShardInfo data) {
+        return data != null && zone.equals(data.getZone()) && (region == null || data.getRegion() == null
+                || region.equals(data.getRegion()));
+    }
+
+    private boolean nearRegion(ShardInfo data) {
+        return region == null || data.getRegion() == null || region.equals(data.getRegion());
+    }
+
+    private boolean inRegion(ShardInfo data) {
+        return data != null && region.equals(data.getRegion());
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.client;
+
+import com.flipkart.ranger.model.ServiceNode;
+import feign.ranger.common.ShardInfo;
+import feign.ranger.routing.RoutingEntry;
+import feign.ranger.routing.RoutingTable;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Difference between two consecutive node lists of a service. Nodes are identified by host and port; a node whose
+ * metadata changed is reported as updated.
+ *
+ * @author phaneesh
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class NodeDelta {
+
+    private final List<ServiceNode<ShardInfo>> added;
+
+    private final List<ServiceNode<ShardInfo>> removed;
+
+    private final List<ServiceNode<ShardInfo>> updated;
+
+    @ToString.Exclude
+    private final RoutingTable routingTable;
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && updated.isEmpty();
+    }
+
+    static NodeDelta between(RoutingTable previous, RoutingTable current) {
+        Map<String, RoutingEntry> remaining = new HashMap<>(previous.size() * 2);
+        for (int i = 0; i < previous.size(); i++) {
+            remaining.put(previous.get(i).getAuthority(), previous.get(i));
+        }
+        List<ServiceNode<ShardInfo>> added = new ArrayList<>();
+        List<ServiceNode<ShardInfo>> updated = new ArrayList<>();
+        for (int i = 0; i < current.size(); i++) {
+            RoutingEntry entry = current.get(i);
+            RoutingEntry before = remaining.remove(entry.getAuthority());
+            if (before == null) {
+                added.add(entry.getNode());
+            } else if (!before.sameAs(entry.getNode())) {
+                updated.add(entry.getNode());
+            }
+        }
+        List<ServiceNode<ShardInfo>> removed = new ArrayList<>(remaining.size());
+        for (RoutingEntry entry : remaining.values()) {
+            removed.add(entry.getNode());
+        }
+        return new NodeDelta(added, removed, updated, current);
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.client;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.flipkart.ranger.model.ServiceNode;
+import feign.ranger.common.ShardInfo;
+import feign.ranger.metrics.RangerMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Deserializes the znode payload published by ranger service providers.
+ *
+ * @author phaneesh
+ */
+@Slf4j
+public class NodeDeserializer {
+
+    private final ObjectReader reader;
+
+    private final String serviceName;
+
+    private final RangerMetrics metrics;
+
+    public NodeDeserializer(ObjectMapper objectMapper) {
+        this(objectMapper, null, RangerMetrics.NOOP);
+    }
+
+    public NodeDeserializer(ObjectMapper objectMapper, String serviceName, RangerMetrics metrics) {
+        this.reader = objectMapper.readerFor(new TypeReference<ServiceNode<ShardInfo>>() {
+        });
+        this.serviceName = serviceName;
+        this.metrics = metrics;
+    }
+
+    public ServiceNode<ShardInfo> deserialize(byte[] data) {
+        try {
+            return reader.readValue(data);
+        } catch (Exception e) {
+            log.warn("Could not parse node data", e);
+            metrics.onDeserializationFailure(serviceName);
+        }
+        return null;
+    }
+}
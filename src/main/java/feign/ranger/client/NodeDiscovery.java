@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.client;
+
+import feign.ranger.routing.RoutingEntry;
+import feign.ranger.routing.RoutingTable;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Source of the nodes a target routes to: a single {@link ServiceDiscoveryClient}, or a
+ * {@link TieredNodeDiscovery} over several of them.
+ *
+ * @author phaneesh
+ */
+public interface NodeDiscovery {
+
+    /**
+     * @return the nodes requests can currently be routed to
+     */
+    RoutingTable routingTable();
+
+    /**
+     * @return every discovered node, including those that are currently not routed to
+     */
+    RoutingTable membership();
+
+    /**
+     * @return a future that completes when nodes are available for routing
+     */
+    CompletableFuture<Void> ready();
+
+    /**
+     * Reports the outcome of a request sent to a node.
+     */
+    void reportResult(RoutingEntry entry, boolean success);
+
+    /**
+     * Adds a listener and hands it every current node as added.
+     */
+    void subscribe(NodeListener listener);
+
+    void removeListener(NodeListener listener);
+}
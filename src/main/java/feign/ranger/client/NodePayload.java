@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.client;
+
+import com.flipkart.ranger.model.ServiceNode;
+import feign.ranger.common.ShardInfo;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A node's znode payload with the heartbeat timestamp taken out. Ranger providers rewrite the timestamp on every
+ * heartbeat, so payloads that are equal apart from it describe the same node and the node parsed from one of them can
+ * be reused with the latest timestamp.
+ *
+ * @author phaneesh
+ */
+final class NodePayload {
+
+    private static final byte[] TIMESTAMP_FIELD = "\"lastUpdatedTimeStamp\"".getBytes(StandardCharsets.UTF_8);
+
+    private final byte[] content;
+
+    private final int hash;
+
+    private final boolean hasTimestamp;
+
+    private final long timestamp;
+
+    private NodePayload(byte[] content, boolean hasTimestamp, long timestamp) {
+        this.content = content;
+        this.hash = Arrays.hashCode(content);
+        this.hasTimestamp = hasTimestamp;
+        this.timestamp = timestamp;
+    }
+
+    static NodePayload of(byte[] data) {
+        int field = indexOf(data, TIMESTAMP_FIELD);
+        if (field < 0) {
+            return new NodePayload(data, false, 0);
+        }
+        int i = skipWhitespace(data, field + TIMESTAMP_FIELD.length);
+        if (i >= data.length || data[i] != ':') {
+            return new NodePayload(data, false, 0);
+        }
+        int start = skipWhitespace(data, i + 1);
+        int end = start;
+        if (end < data.length && data[end] == '-') {
+            end++;
+        }
+        long value = 0;
+        while (end < data.length && data[end] >= '0' && data[end] <= '9') {
+            value = value * 10 + (data[end] - '0');
+            end++;
+        }
+        if (end == start || (end == start + 1 && data[start] == '-')) {
+            return new NodePayload(data, false, 0);
+        }
+        byte[] content = new byte[data.length - (end - start)];
+        System.arraycopy(data, 0, content, 0, start);
+        System.arraycopy(data, end, content, start, data.length - end);
+        return new NodePayload(content, true, data[start] == '-' ? -value : value);
+    }
+
+    /**
+     * Updates a node parsed from an equal payload with this payload's heartbeat timestamp.
+     *
+     * @return the given node
+     */
+    ServiceNode<ShardInfo> refresh(ServiceNode<ShardInfo> node) {
+        if (hasTimestamp && node.getLastUpdatedTimeStamp() != timestamp) {
+            node.setLastUpdatedTimeStamp(timestamp);
+        }
+        return node;
+    }
+
+    private static int skipWhitespace(byte[] data, int from) {
+        int i = from;
+        while (i < data.length && (data[i] == ' ' || data[i] == '\t' || data[i] == '\n' || data[i] == '\r')) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int indexOf(byte[] data, byte[] target) {
+        outer:
+        for (int i = 0; i <= data.length - target.length; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (data[i + j] != target[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof NodePayload
+                && hash == ((NodePayload) other).hash
+                && Arrays.equals(content, ((NodePayload) other).content);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.flipkart.ranger.model.ServiceNode;
+import feign.ranger.common.ShardInfo;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Last known node list of a service kept on local disk, so that a client can route before its first zookeeper read
+ * completes or while zookeeper is unreachable. The file is replaced atomically on every write.
+ *
+ * @author phaneesh
+ */
+@Slf4j
+class NodeSnapshot {
+
+    private final Path path;
+    private final String serviceName;
+    private final String environment;
+    private final long maxAgeMs;
+    private final ObjectReader reader;
+    private final ObjectWriter writer;
+    private volatile long savedAt;
+
+    NodeSnapshot(Path path, String serviceName, String environment, long maxAgeMs, ObjectMapper objectMapper) {
+        this.path = path;
+        this.serviceName = serviceName;
+        this.environment = environment;
+        this.maxAgeMs = maxAgeMs;
+        this.reader = objectMapper.readerFor(Contents.class);
+        this.writer = objectMapper.writerFor(Contents.class);
+    }
+
+    /**
+     * @return the saved snapshot, or an empty one if there is no usable snapshot
+     */
+    Contents load() {
+        try {
+            Contents contents = reader.readValue(Files.readAllBytes(path));
+            if (!Objects.equals(serviceName, contents.getService())
+                    || !Objects.equals(environment, contents.getEnvironment())) {
+                log.warn("Ignoring node snapshot {} written for another service", path);
+                return Contents.EMPTY;
+            }
+            if (expiresAt(contents) < System.currentTimeMillis()) {
+                log.info("Ignoring stale node snapshot {}", path);
+                return Contents.EMPTY;
+            }
+            savedAt = contents.getSavedAt();
+            return contents;
+        } catch (NoSuchFileException e) {
+            log.debug("No node snapshot at {}", path);
+        } catch (Exception e) {
+            log.warn("Could not read node snapshot {}", path, e);
+        }
+        return Contents.EMPTY;
+    }
+
+    long expiresAt(Contents contents) {
+        return contents.getSavedAt() + maxAgeMs;
+    }
+
+    /**
+     * @return true if the snapshot has not been written recently enough to survive a restart
+     */
+    boolean isDue(long now) {
+        return now - savedAt >= maxAgeMs / 2;
+    }
+
+    void save(List<ServiceNode<ShardInfo>> nodes) {
+        Path temp = null;
+        try {
+            Path directory = path.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+            long now = System.currentTimeMillis();
+            Files.write(temp, writer.writeValueAsBytes(new Contents(serviceName, environment, now, nodes)));
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+            savedAt = now;
+        } catch (Exception e) {
+            log.warn("Could not write node snapshot {}", path, e);
+            deleteQuietly(temp);
+        }
+    }
+
+    private static void deleteQuietly(Path temp) {
+        if (temp == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(temp);
+        } catch (IOException e) {
+            log.debug("Could not delete {}", temp, e);
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    static class Contents {
+
+        static final Contents EMPTY = new Contents(null, null, 0, Collections.emptyList());
+
+        private String service;
+
+        private String environment;
+
+        private long savedAt;
+
+        private List<ServiceNode<ShardInfo>> nodes;
+    }
+}
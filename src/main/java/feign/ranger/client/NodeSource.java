@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.client;
+
+import com.flipkart.ranger.model.ServiceNode;
+import feign.ranger.common.ShardInfo;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Source of the healthy nodes of a service, matching the client's criteria.
+ *
+ * @author phaneesh
+ */
+interface NodeSource {
+
+    /**
+     * Starts the source. The first node list must be available when this returns; {@code onChange} is invoked from the
+     * given scheduler whenever the node list may have changed.
+     */
+    void start(ScheduledExecutorService scheduler, Runnable onChange) throws Exception;
+
+    void stop() throws Exception;
+
+    List<ServiceNode<ShardInfo>> nodes();
+
+    /**
+     * @return true once a node list has been read from zookeeper, even an empty one
+     */
+    boolean hasRead();
+}
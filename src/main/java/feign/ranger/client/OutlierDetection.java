@@ -0,0 +1,63 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.client;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Thresholds for passive outlier detection. A node is ejected from routing when it fails {@code consecutiveFailures}
+ * requests in a row, or when its error rate over an interval reaches {@code errorRateThreshold} with at least
+ * {@code minimumRequests} requests. Connection errors, timeouts and 5xx responses count as failures.
+ *
+ * @author phaneesh
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class OutlierDetection {
+
+    @Builder.Default
+    private int consecutiveFailures = 5;
+
+    @Builder.Default
+    private double errorRateThreshold = 0.5;
+
+    @Builder.Default
+    private int minimumRequests = 20;
+
+    /**
+     * Error rates are evaluated, and expired ejections lifted, once every interval.
+     */
+    @Builder.Default
+    private long intervalMs = 10000;
+
+    @Builder.Default
+    private long baseEjectionTimeMs = 30000;
+
+    @Builder.Default
+    private long maxEjectionTimeMs = 300000;
+
+    /**
+     * Nodes are never ejected beyond this share of the discovered nodes.
+     */
+    @Builder.Default
+    private int maxEjectionPercent = 50;
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.client;
+
+import feign.ranger.routing.NodeStats;
+import feign.ranger.routing.RoutingEntry;
+import feign.ranger.routing.RoutingTable;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Applies {@link OutlierDetection} thresholds to the nodes of a service.
+ *
+ * @author phaneesh
+ */
+@Slf4j
+class OutlierDetector {
+
+    private final String serviceName;
+    private final OutlierDetection config;
+
+    OutlierDetector(String serviceName, OutlierDetection config) {
+        this.serviceName = serviceName;
+        this.config = config;
+    }
+
+    long intervalMs() {
+        return config.getIntervalMs();
+    }
+
+    /**
+     * @return true if the node got ejected
+     */
+    boolean onFailure(RoutingEntry entry, RoutingTable membership) {
+        return entry.getStats().recordFailure() >= config.getConsecutiveFailures()
+                && eject(entry, membership, System.currentTimeMillis(), "consecutive failures");
+    }
+
+    /**
+     * Evaluates error rates over the last interval and lifts expired ejections.
+     *
+     * @return true if any node got ejected or restored
+     */
+    boolean sweep(RoutingTable membership) {
+        long now = System.currentTimeMillis();
+        boolean changed = false;
+        for (int i = 0; i < membership.size(); i++) {
+            RoutingEntry entry = membership.get(i);
+            NodeStats stats = entry.getStats();
+            long requests = stats.windowRequestsThenReset();
+            long failures = stats.windowFailuresThenReset();
+            if (stats.isEjected()) {
+                if (stats.ejectedUntil() <= now) {
+                    stats.restore();
+                    log.info("Restored node {} of {}", entry.getAuthority(), serviceName);
+                    changed = true;
+                }
+                continue;
+            }
+            if (requests >= config.getMinimumRequests()
+                    && failures >= requests * config.getErrorRateThreshold()) {
+                changed |= eject(entry, membership, now, "error rate");
+            } else if (failures == 0) {
+                stats.forgiveEjection();
+            }
+        }
+        return changed;
+    }
+
+    private synchronized boolean eject(RoutingEntry entry, RoutingTable membership, long now, String reason) {
+        NodeStats stats = entry.getStats();
+        if (stats.isEjected()) {
+            return false;
+        }
+        int ejected = 0;
+        for (int i = 0; i < membership.size(); i++) {
+            if (membership.get(i).getStats().isEjected()) {
+                ejected++;
+            }
+        }
+        if ((ejected + 1) * 100L > (long) config.getMaxEjectionPercent() * membership.size()) {
+            return false;
+        }
+        long duration = stats.eject(now, config.getBaseEjectionTimeMs(), config.getMaxEjectionTimeMs());
+        log.warn("Ejected node {} of {} for {} ms on {}", entry.getAuthority(), serviceName, duration, reason);
+        return true;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.client;
+
+/**
+ * How the discovery client learns about changes to the service's node list.
+ *
+ * @author phaneesh
+ */
+public enum RefreshMode {
+
+    /**
+     * Ranger's finder polls zookeeper every node refresh interval.
+     */
+    POLLING,
+
+    /**
+     * Child watches on the service path trigger a (debounced) refresh as soon as nodes join or leave. A full read every
+     * node refresh interval reconciles health changes and any missed events.
+     */
+    WATCH
+}
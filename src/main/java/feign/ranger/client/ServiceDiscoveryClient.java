@@ -16,65 +16,333 @@
 
 package feign.ranger.client;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.flipkart.ranger.ServiceFinderBuilders;
-import com.flipkart.ranger.finder.sharded.SimpleShardedServiceFinder;
 import com.flipkart.ranger.model.ServiceNode;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import feign.ranger.common.ShardInfo;
+import feign.ranger.metrics.RangerMetrics;
+import feign.ranger.routing.NodeSelector;
+import feign.ranger.routing.RandomNodeSelector;
+import feign.ranger.routing.RoutingEntry;
+import feign.ranger.routing.RoutingTable;
 import lombok.Builder;
 import lombok.extern.slf4j.Slf4j;
+import lombok.val;
 import org.apache.curator.framework.CuratorFramework;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author phaneesh
  */
 @Slf4j
-public class ServiceDiscoveryClient {
+public class ServiceDiscoveryClient implements NodeDiscovery {
 
-    private final ShardInfo criteria;
-    private SimpleShardedServiceFinder<ShardInfo> serviceFinder;
+    private static final long DEFAULT_SYNC_INTERVAL_MS = 1000;
+    private static final long DEFAULT_POLLING_REFRESH_INTERVAL_MS = 5000;
+    // Health flips and stale heartbeats only show up on a full read, so reconcile as often as the finder polls
+    private static final long DEFAULT_WATCH_RECONCILE_INTERVAL_MS = DEFAULT_POLLING_REFRESH_INTERVAL_MS;
+    private static final long DEFAULT_REFRESH_DEBOUNCE_MS = 50;
+    private static final long DEFAULT_SNAPSHOT_MAX_AGE_MS = TimeUnit.DAYS.toMillis(1);
+    private static final long MIN_START_RETRY_MS = 500;
+    private static final long MAX_START_RETRY_MS = 30000;
+
+    private final String serviceName;
+    private final NodeSource nodeSource;
+    private final NodeSelector nodeSelector;
+    private final List<NodeListener> listeners = new CopyOnWriteArrayList<>();
+    private final OutlierDetector outlierDetector;
+    private final LocalityRouter localityRouter;
+    private final RangerMetrics metrics;
+    private final NodeSnapshot snapshot;
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+    private ScheduledExecutorService scheduler;
+    private volatile boolean live = true;
+    private volatile long snapshotExpiresAt;
+    private volatile RoutingTable membership = RoutingTable.EMPTY;
+    private volatile RoutingTable routingTable = RoutingTable.EMPTY;
 
     @Builder
     ServiceDiscoveryClient(String namespace, String serviceName, String environment,
-                           ObjectMapper objectMapper, CuratorFramework curator) throws Exception {
-        this.criteria = ShardInfo.builder().environment(environment).build();
-        this.serviceFinder = ServiceFinderBuilders.<ShardInfo>shardedFinderBuilder()
-                .withCuratorFramework(curator)
-                .withNamespace(namespace)
-                .withServiceName(serviceName)
-                .withDisableWatchers(true)
-                .withNodeRefreshIntervalMs(5000)
-                .withDeserializer(data -> {
-                    try {
-                        return objectMapper.readValue(data,
-                                new TypeReference<ServiceNode<ShardInfo>>() {
-                                });
-                    } catch (Exception e) {
-                        log.warn("Could not parse node data", e);
-                    }
-                    return null;
-                })
-                .build();
+                           ObjectMapper objectMapper, CuratorFramework curator, long syncIntervalMs,
+                           RefreshMode refreshMode, long nodeRefreshIntervalMs, long refreshDebounceMs,
+                           NodeSelector nodeSelector, OutlierDetection outlierDetection, Path snapshotPath,
+                           long snapshotMaxAgeMs, Locality locality, RangerMetrics metrics) throws Exception {
+        this.serviceName = serviceName;
+        this.metrics = metrics != null ? metrics : RangerMetrics.NOOP;
+        this.localityRouter = locality != null ? new LocalityRouter(locality) : null;
+        this.snapshot = snapshotPath == null ? null : new NodeSnapshot(snapshotPath, serviceName, environment,
+                snapshotMaxAgeMs > 0 ? snapshotMaxAgeMs : DEFAULT_SNAPSHOT_MAX_AGE_MS, objectMapper);
+        this.outlierDetector = outlierDetection != null ? new OutlierDetector(serviceName, outlierDetection) : null;
+        this.nodeSelector = nodeSelector != null ? nodeSelector : new RandomNodeSelector();
+        val criteria = ShardInfo.builder().environment(environment).build();
+        val deserializer = new NodeDeserializer(objectMapper, serviceName, this.metrics);
+        if (refreshMode == RefreshMode.WATCH) {
+            this.nodeSource = new WatchingNodeSource(curator, serviceName, criteria, deserializer,
+                    nodeRefreshIntervalMs > 0 ? nodeRefreshIntervalMs : DEFAULT_WATCH_RECONCILE_INTERVAL_MS,
+                    refreshDebounceMs > 0 ? refreshDebounceMs : DEFAULT_REFRESH_DEBOUNCE_MS);
+        } else {
+            this.nodeSource = new FinderNodeSource(curator, namespace, serviceName, criteria, deserializer,
+                    nodeRefreshIntervalMs > 0 ? nodeRefreshIntervalMs : DEFAULT_POLLING_REFRESH_INTERVAL_MS,
+                    syncIntervalMs > 0 ? syncIntervalMs : DEFAULT_SYNC_INTERVAL_MS);
+        }
     }
 
     public void start() throws Exception {
-        serviceFinder.start();
+        prepare();
+        startDiscovery();
+    }
+
+    /**
+     * Starts discovery on the client's own routing thread and returns immediately. Nodes from the snapshot, if any,
+     * are routable as soon as this returns. If discovery cannot be started, for example because zookeeper is not
+     * reachable yet, it is retried with a backoff of up to 30 seconds until it starts or the client is stopped.
+     *
+     * @return a future that completes when the first non-empty node list is available
+     */
+    public CompletableFuture<Void> startAsync() {
+        prepare();
+        scheduler.execute(() -> startDiscoveryOrRetry(MIN_START_RETRY_MS));
+        return ready();
+    }
+
+    private void startDiscoveryOrRetry(long backoffMs) {
+        try {
+            startDiscovery();
+        } catch (Exception e) {
+            log.warn("Could not start service discovery for {}, retrying in {}ms", serviceName, backoffMs, e);
+            try {
+                nodeSource.stop();
+            } catch (Exception stopError) {
+                log.debug("Could not stop node source for {}", serviceName, stopError);
+            }
+            try {
+                scheduler.schedule(() -> startDiscoveryOrRetry(Math.min(backoffMs * 2, MAX_START_RETRY_MS)),
+                        backoffMs, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException stopped) {
+                log.debug("Service discovery for {} stopped before it could start", serviceName);
+            }
+        }
+    }
+
+    private void prepare() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("ranger-routing-" + serviceName + "-%d")
+                .build());
+        if (snapshot != null) {
+            restoreSnapshot();
+        }
+    }
+
+    private void startDiscovery() throws Exception {
+        nodeSource.start(scheduler, this::refreshQuietly);
+        refresh();
+        if (outlierDetector != null) {
+            scheduler.scheduleWithFixedDelay(this::sweepOutliers, outlierDetector.intervalMs(),
+                    outlierDetector.intervalMs(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return a future that completes when the first non-empty node list is available
+     */
+    public CompletableFuture<Void> ready() {
+        return ready.copy();
     }
 
     public void stop() throws Exception {
-        serviceFinder.stop();
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        nodeSource.stop();
+    }
+
+    public void addListener(NodeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Adds a listener and hands it every current node as added, so that it sees a consistent view of membership from
+     * then on.
+     */
+    public synchronized void subscribe(NodeListener listener) {
+        listeners.add(listener);
+        RoutingTable current = membership;
+        if (!current.isEmpty()) {
+            listener.onChange(new NodeDelta(current.nodes(), Collections.emptyList(), Collections.emptyList(),
+                    current));
+        }
+    }
+
+    public void removeListener(NodeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Seeds the routing table from the on-disk snapshot. The snapshot is used until discovery reports nodes or the
+     * snapshot expires, whichever happens first.
+     */
+    private synchronized void restoreSnapshot() {
+        NodeSnapshot.Contents contents = snapshot.load();
+        if (contents.getNodes() == null || contents.getNodes().isEmpty()) {
+            return;
+        }
+        live = false;
+        snapshotExpiresAt = snapshot.expiresAt(contents);
+        update(contents.getNodes());
+        log.info("Restored {} nodes for {} from snapshot", contents.getNodes().size(), serviceName);
+    }
+
+    /**
+     * Rebuilds the routing table if the discovered node list has changed since the last refresh and notifies
+     * listeners of the added, removed and updated nodes.
+     */
+    public synchronized void refresh() {
+        long start = System.nanoTime();
+        List<ServiceNode<ShardInfo>> nodes = nodeSource.nodes();
+        if (!live) {
+            if (nodes.isEmpty() && !nodeSource.hasRead() && System.currentTimeMillis() < snapshotExpiresAt) {
+                metrics.onRefresh(serviceName, membership.size(), System.nanoTime() - start, false);
+                return;
+            }
+            live = true;
+        }
+        boolean changed = update(nodes);
+        if (snapshot != null && !nodes.isEmpty() && (changed || snapshot.isDue(System.currentTimeMillis()))) {
+            snapshot.save(nodes);
+        }
+        metrics.onRefresh(serviceName, membership.size(), System.nanoTime() - start, changed);
+    }
+
+    private boolean update(List<ServiceNode<ShardInfo>> nodes) {
+        RoutingTable previous = membership;
+        if (previous.hasSameNodes(nodes)) {
+            return false;
+        }
+        RoutingTable current = RoutingTable.of(nodes, previous);
+        membership = current;
+        routingTable = routable(current);
+        if (!current.isEmpty() && !ready.isDone()) {
+            ready.complete(null);
+        }
+        NodeDelta delta = NodeDelta.between(previous, current);
+        log.debug("Routing table for {} rebuilt with {} nodes: {}", serviceName, current.size(), delta);
+        if (delta.isEmpty()) {
+            return true;
+        }
+        if (!delta.getRemoved().isEmpty()) {
+            for (int i = 0; i < previous.size(); i++) {
+                if (current.find(previous.get(i).getAuthority()) == null) {
+                    metrics.onNodeRemoved(serviceName, previous.get(i));
+                }
+            }
+        }
+        for (NodeListener listener : listeners) {
+            try {
+                listener.onChange(delta);
+            } catch (Exception e) {
+                log.warn("Node listener failed for {}", serviceName, e);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reports the outcome of a request sent to a node, used for outlier detection.
+     */
+    public void reportResult(RoutingEntry entry, boolean success) {
+        if (success) {
+            entry.getStats().recordSuccess();
+        } else if (outlierDetector == null) {
+            entry.getStats().recordFailure();
+        } else if (outlierDetector.onFailure(entry, membership)) {
+            rebuildRoutable();
+        }
+    }
+
+    private void sweepOutliers() {
+        try {
+            if (outlierDetector.sweep(membership)) {
+                rebuildRoutable();
+            }
+        } catch (Exception e) {
+            log.warn("Could not evaluate outliers for {}", serviceName, e);
+        }
+    }
+
+    private synchronized void rebuildRoutable() {
+        routingTable = routable(membership);
+    }
+
+    /**
+     * @return the discovered nodes minus the ones currently ejected by outlier detection, narrowed down to the
+     * caller's locality when one is configured
+     */
+    private RoutingTable routable(RoutingTable nodes) {
+        RoutingTable healthy = withoutEjected(nodes);
+        return localityRouter == null ? healthy : localityRouter.prefer(nodes, healthy);
+    }
+
+    private RoutingTable withoutEjected(RoutingTable nodes) {
+        if (outlierDetector == null) {
+            return nodes;
+        }
+        List<ServiceNode<ShardInfo>> healthy = new ArrayList<>(nodes.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            if (!nodes.get(i).getStats().isEjected()) {
+                healthy.add(nodes.get(i).getNode());
+            }
+        }
+        if (healthy.size() == nodes.size() || healthy.isEmpty()) {
+            return nodes;
+        }
+        return RoutingTable.of(healthy, nodes);
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            log.warn("Could not refresh routing table for {}", serviceName, e);
+        }
+    }
+
+    /**
+     * @return the nodes requests can currently be routed to
+     */
+    public RoutingTable routingTable() {
+        return routingTable;
+    }
+
+    /**
+     * @return every discovered node, including those ejected by outlier detection
+     */
+    public RoutingTable membership() {
+        return membership;
+    }
+
+    public RoutingEntry selectNode() {
+        return nodeSelector.select(routingTable);
     }
 
     public Optional<ServiceNode<ShardInfo>> getNode() {
-        return Optional.ofNullable(serviceFinder.get(criteria));
+        RoutingEntry entry = selectNode();
+        return entry == null ? Optional.empty() : Optional.of(entry.getNode());
     }
 
     public List<ServiceNode<ShardInfo>> getAllNodes() {
-        return serviceFinder.getAll(criteria);
+        return routingTable.nodes();
     }
 
 
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.client;
+
+import feign.ranger.routing.RoutingEntry;
+import feign.ranger.routing.RoutingTable;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Merged view of the nodes of one service discovered by several {@link ServiceDiscoveryClient}s, for a service
+ * registered in more than one ZooKeeper ensemble or environment. Clients are grouped in priority tiers. Requests are
+ * routed to the first tier as long as it has at least {@code failoverThreshold} healthy nodes; below that the next
+ * tiers are added, in order, until the threshold is met or every tier is in use. Membership is the union of all
+ * clients' nodes.
+ *
+ * <p>The tiers in use are re-evaluated whenever a client's routing table changes, so failing over and back needs no
+ * change to the feign clients using it. The clients themselves are not started or stopped by this class.
+ *
+ * @author phaneesh
+ */
+@Slf4j
+public class TieredNodeDiscovery implements NodeDiscovery, NodeListener, Closeable {
+
+    private final String serviceName;
+
+    private final List<List<ServiceDiscoveryClient>> tiers;
+
+    private final List<ServiceDiscoveryClient> clients = new ArrayList<>();
+
+    private final int failoverThreshold;
+
+    private final List<NodeListener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile RoutingTable membership = RoutingTable.EMPTY;
+
+    private volatile Routing routing = new Routing(new RoutingTable[0], RoutingTable.EMPTY, 0);
+
+    /**
+     * @param tiers             clients grouped by priority, most preferred first
+     * @param failoverThreshold healthy nodes below which the next tier is routed to as well; at least 1
+     */
+    public TieredNodeDiscovery(String serviceName, List<List<ServiceDiscoveryClient>> tiers, int failoverThreshold) {
+        this.serviceName = serviceName;
+        this.tiers = tiers;
+        this.failoverThreshold = Math.max(1, failoverThreshold);
+        for (List<ServiceDiscoveryClient> tier : tiers) {
+            clients.addAll(tier);
+        }
+        for (ServiceDiscoveryClient client : clients) {
+            client.addListener(this);
+        }
+        rebuildMembership();
+    }
+
+    @Override
+    public RoutingTable routingTable() {
+        Routing current = routing;
+        if (!current.isCurrent(clients)) {
+            current = route();
+            routing = current;
+        }
+        return current.table;
+    }
+
+    @Override
+    public RoutingTable membership() {
+        return membership;
+    }
+
+    /**
+     * @return a future that completes when any of the clients has nodes available for routing
+     */
+    @Override
+    public CompletableFuture<Void> ready() {
+        CompletableFuture<?>[] ready = new CompletableFuture<?>[clients.size()];
+        for (int i = 0; i < ready.length; i++) {
+            ready[i] = clients.get(i).ready();
+        }
+        return CompletableFuture.anyOf(ready).thenAccept(ignored -> {
+        });
+    }
+
+    /**
+     * Reports the outcome of a request to the client that discovered the node.
+     */
+    @Override
+    public void reportResult(RoutingEntry entry, boolean success) {
+        for (ServiceDiscoveryClient client : clients) {
+            RoutingEntry own = client.membership().find(entry.getAuthority());
+            if (own != null) {
+                client.reportResult(own, success);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void subscribe(NodeListener listener) {
+        listeners.add(listener);
+        RoutingTable current = membership;
+        if (!current.isEmpty()) {
+            listener.onChange(new NodeDelta(current.nodes(), Collections.emptyList(), Collections.emptyList(),
+                    current));
+        }
+    }
+
+    @Override
+    public void removeListener(NodeListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void onChange(NodeDelta delta) {
+        rebuildMembership();
+    }
+
+    /**
+     * Stops following the clients.
+     */
+    @Override
+    public void close() {
+        for (ServiceDiscoveryClient client : clients) {
+            client.removeListener(this);
+        }
+    }
+
+    private synchronized void rebuildMembership() {
+        List<RoutingTable> tables = new ArrayList<>(clients.size());
+        for (ServiceDiscoveryClient client : clients) {
+            tables.add(client.membership());
+        }
+        RoutingTable previous = membership;
+        RoutingTable current = RoutingTable.merge(tables);
+        membership = current;
+        NodeDelta delta = NodeDelta.between(previous, current);
+        if (delta.isEmpty()) {
+            return;
+        }
+        for (NodeListener listener : listeners) {
+            try {
+                listener.onChange(delta);
+            } catch (Exception e) {
+                log.warn("Node listener failed for {}", serviceName, e);
+            }
+        }
+    }
+
+    private Routing route() {
+        RoutingTable[] inputs = new RoutingTable[clients.size()];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = clients.get(i).routingTable();
+        }
+        List<RoutingTable> selected = new ArrayList<>(inputs.length);
+        int healthy = 0;
+        int tiersInUse = 0;
+        int index = 0;
+        for (List<ServiceDiscoveryClient> tier : tiers) {
+            for (int i = 0; i < tier.size(); i++) {
+                RoutingTable table = inputs[index++];
+                if (!table.isEmpty()) {
+                    selected.add(table);
+                    healthy += healthyNodes(table);
+                }
+            }
+            tiersInUse++;
+            if (healthy >= failoverThreshold) {
+                break;
+            }
+        }
+        int previous = routing.tiersInUse;
+        if (previous != 0 && previous != tiersInUse) {
+            log.info("Routing {} to {} of {} discovery tiers with {} healthy nodes", serviceName, tiersInUse,
+                    tiers.size(), healthy);
+        }
+        return new Routing(inputs, selected.isEmpty() ? RoutingTable.EMPTY : RoutingTable.merge(selected),
+                tiersInUse);
+    }
+
+    private static int healthyNodes(RoutingTable table) {
+        int healthy = 0;
+        for (int i = 0; i < table.size(); i++) {
+            if (!table.get(i).getStats().isEjected()) {
+                healthy++;
+            }
+        }
+        return healthy;
+    }
+
+    /**
+     * Routing table built from the given routing tables of the clients.
+     */
+    private static final class Routing {
+
+        private final RoutingTable[] inputs;
+
+        private final RoutingTable table;
+
+        private final int tiersInUse;
+
+        private Routing(RoutingTable[] inputs, RoutingTable table, int tiersInUse) {
+            this.inputs = inputs;
+            this.table = table;
+            this.tiersInUse = tiersInUse;
+        }
+
+        private boolean isCurrent(List<ServiceDiscoveryClient> clients) {
+            if (inputs.length != clients.size()) {
+                return false;
+            }
+            for (int i = 0; i < inputs.length; i++) {
+                if (clients.get(i).routingTable() != inputs[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
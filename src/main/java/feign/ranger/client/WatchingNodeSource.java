@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.client;
+
+import com.flipkart.ranger.healthcheck.HealthcheckStatus;
+import com.flipkart.ranger.model.ServiceNode;
+import feign.ranger.common.ShardInfo;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.CuratorWatcher;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Node source that watches the children of the service path. Bursts of child events are coalesced into a single
+ * read after a short debounce, and a full read every reconcile interval picks up health changes, stale heartbeats and
+ * missed events. Node data is not watched, since every provider heartbeat would trigger a read.
+ * Nodes are read from the same znodes ranger providers publish and filtered the same way ranger's finder does. Parsed
+ * nodes are kept by child name along with their payload, leaving out the heartbeat timestamp, so only added or
+ * modified children are parsed on a read.
+ *
+ * @author phaneesh
+ */
+@Slf4j
+class WatchingNodeSource implements NodeSource {
+
+    private static final long STALE_NODE_THRESHOLD_MS = 60000;
+
+    private final CuratorFramework curator;
+    private final String path;
+    private final ShardInfo criteria;
+    private final NodeDeserializer deserializer;
+    private final long reconcileIntervalMs;
+    private final long debounceMs;
+    private final AtomicBoolean refreshPending = new AtomicBoolean();
+    private final CuratorWatcher watcher = event -> scheduleRefresh();
+    private volatile boolean running;
+    private volatile List<ServiceNode<ShardInfo>> nodes = Collections.emptyList();
+    private Map<String, ParsedNode> parsed = new HashMap<>();
+    private volatile boolean read;
+    private ScheduledExecutorService scheduler;
+    private Runnable onChange;
+
+    WatchingNodeSource(CuratorFramework curator, String serviceName, ShardInfo criteria, NodeDeserializer deserializer,
+                       long reconcileIntervalMs, long debounceMs) {
+        this.curator = curator;
+        this.path = "/" + serviceName;
+        this.criteria = criteria;
+        this.deserializer = deserializer;
+        this.reconcileIntervalMs = reconcileIntervalMs;
+        this.debounceMs = debounceMs;
+    }
+
+    @Override
+    public void start(ScheduledExecutorService scheduler, Runnable onChange) throws Exception {
+        this.scheduler = scheduler;
+        this.onChange = onChange;
+        this.running = true;
+        read();
+        scheduler.scheduleWithFixedDelay(this::refresh, reconcileIntervalMs, reconcileIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public List<ServiceNode<ShardInfo>> nodes() {
+        return nodes;
+    }
+
+    @Override
+    public boolean hasRead() {
+        return read;
+    }
+
+    private void scheduleRefresh() {
+        if (running && refreshPending.compareAndSet(false, true)) {
+            scheduler.schedule(this::refresh, debounceMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void refresh() {
+        if (!running) {
+            return;
+        }
+        try {
+            read();
+            onChange.run();
+        } catch (Exception e) {
+            log.warn("Could not read nodes under {}", path, e);
+        }
+    }
+
+    private void read() throws Exception {
+        refreshPending.set(false);
+        List<String> children;
+        try {
+            children = new ArrayList<>(curator.getChildren().usingWatcher(watcher).forPath(path));
+        } catch (KeeperException.NoNodeException e) {
+            curator.checkExists().usingWatcher(watcher).forPath(path);
+            parsed = new HashMap<>();
+            nodes = Collections.emptyList();
+            read = true;
+            return;
+        }
+        Collections.sort(children);
+        long staleThreshold = System.currentTimeMillis() - STALE_NODE_THRESHOLD_MS;
+        List<ServiceNode<ShardInfo>> found = new ArrayList<>(children.size());
+        Map<String, ParsedNode> current = new HashMap<>(children.size() * 2);
+        for (String child : children) {
+            Stat stat = new Stat();
+            byte[] data;
+            try {
+                data = curator.getData().storingStatIn(stat).forPath(path + "/" + child);
+            } catch (KeeperException.NoNodeException e) {
+                continue;
+            }
+            if (data == null) {
+                continue;
+            }
+            ParsedNode entry = parsed.get(child);
+            if (entry == null || entry.version != stat.getVersion()) {
+                NodePayload payload = NodePayload.of(data);
+                if (entry != null && entry.payload.equals(payload)) {
+                    entry = new ParsedNode(stat.getVersion(), payload, payload.refresh(entry.node));
+                } else {
+                    ServiceNode<ShardInfo> node = deserializer.deserialize(data);
+                    if (node == null) {
+                        continue;
+                    }
+                    entry = new ParsedNode(stat.getVersion(), payload, node);
+                }
+            }
+            current.put(child, entry);
+            ServiceNode<ShardInfo> node = entry.node;
+            if (HealthcheckStatus.healthy == node.getHealthcheckStatus()
+                    && node.getLastUpdatedTimeStamp() > staleThreshold
+                    && criteria.equals(node.getNodeData())) {
+                found.add(node);
+            }
+        }
+        parsed = current;
+        nodes = Collections.unmodifiableList(found);
+        read = true;
+    }
+
+    private static final class ParsedNode {
+
+        private final int version;
+        private final NodePayload payload;
+        private final ServiceNode<ShardInfo> node;
+
+        private ParsedNode(int version, NodePayload payload, ServiceNode<ShardInfo> node) {
+            this.version = version;
+            this.payload = payload;
+            this.node = node;
+        }
+    }
+}
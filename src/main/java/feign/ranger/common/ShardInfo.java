@@ -16,19 +16,55 @@
 
 package feign.ranger.common;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 
+import java.util.Objects;
+
 /**
+ * Node data published by service providers. Ranger matches nodes by {@link #equals(Object)}, so equality only covers
+ * the environment; region, zone and weight are optional metadata and are left out of the payload when not set.
+ *
  * @author phaneesh
  */
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
 public class ShardInfo {
 
+    @EqualsAndHashCode.Include
     private String environment;
+
+    private String region;
+
+    private String zone;
+
+    /**
+     * Relative capacity of the node, used by capacity weighted routing. Nodes without a weight count as 1.
+     */
+    private Integer weight;
+
+    public ShardInfo(String environment) {
+        this.environment = environment;
+    }
+
+    /**
+     * @return true if the other node data has the same environment and metadata
+     */
+    public boolean sameAs(ShardInfo other) {
+        return other != null
+                && Objects.equals(environment, other.environment)
+                && Objects.equals(region, other.region)
+                && Objects.equals(zone, other.zone)
+                && Objects.equals(weight, other.weight);
+    }
 }
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.hedge;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import feign.Client;
+import feign.MethodMetadata;
+import feign.Request;
+import feign.RequestTemplate;
+import feign.Response;
+import feign.ranger.RangerTarget;
+import feign.ranger.common.LatencyHistogram;
+import feign.ranger.retry.RetryBudget;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Feign client decorator that hedges requests of idempotent methods. If a request has not completed within the
+ * configured percentile of recent response times, a second request is sent to a different node of the target and the
+ * first response wins; the other request is cancelled and its response, if any, closed. Methods are opted in with
+ * {@link Hedged} or through {@link HedgingPolicy#getMethods()}; all other requests go straight to the delegate.
+ *
+ * <p>Both requests of a hedged call run on a bounded pool so that the caller can return whichever finishes first;
+ * when the pool is busy the request runs on the calling thread, or is not hedged. Until enough response times have
+ * been recorded to set a hedge delay, requests run on the calling thread as well. Close the client to shut down the
+ * pool it created.
+ *
+ * @author phaneesh
+ */
+@Slf4j
+public class HedgingClient implements Client, Closeable {
+
+    private final RangerTarget<?> target;
+
+    private final Client delegate;
+
+    private final HedgingPolicy policy;
+
+    private final ExecutorService executor;
+
+    private final boolean ownsExecutor;
+
+    private final RetryBudget hedgeBudget;
+
+    private final LatencyHistogram recent = new LatencyHistogram();
+
+    private final Map<MethodMetadata, Boolean> hedgedMethods = new ConcurrentHashMap<>();
+
+    private volatile long delayNanos = Long.MAX_VALUE;
+
+    private volatile long windowStart = System.currentTimeMillis();
+
+    public HedgingClient(RangerTarget<?> target, Client delegate, HedgingPolicy policy) {
+        this(target, delegate, policy, new ThreadPoolExecutor(0, policy.getMaxThreads(), 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("ranger-hedge-" + target.getService() + "-%d")
+                .build()), true);
+    }
+
+    /**
+     * Runs hedged requests on the given executor, which is left running when this client is closed. The executor
+     * should be bounded and reject tasks when it is busy.
+     */
+    public HedgingClient(RangerTarget<?> target, Client delegate, HedgingPolicy policy, ExecutorService executor) {
+        this(target, delegate, policy, executor, false);
+    }
+
+    private HedgingClient(RangerTarget<?> target, Client delegate, HedgingPolicy policy, ExecutorService executor,
+                          boolean ownsExecutor) {
+        this.target = target;
+        this.delegate = delegate;
+        this.policy = policy;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.hedgeBudget = new RetryBudget(policy.getMaxHedgeRatio(), 0);
+    }
+
+    @Override
+    public Response execute(Request request, Request.Options options) throws IOException {
+        if (!isHedged(request)) {
+            return delegate.execute(request, options);
+        }
+        hedgeBudget.onRequest();
+        long delay = delayNanos;
+        if (delay == Long.MAX_VALUE) {
+            long start = System.nanoTime();
+            Response response = delegate.execute(request, options);
+            record(System.nanoTime() - start);
+            return response;
+        }
+        CompletableFuture<Response> primary = new CompletableFuture<>();
+        Future<?> primaryTask;
+        try {
+            primaryTask = executor.submit(() -> run(request, options, primary, true));
+        } catch (RejectedExecutionException e) {
+            return delegate.execute(request, options);
+        }
+        try {
+            try {
+                return primary.get(delay, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                return hedge(request, options, primary, primaryTask);
+            }
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } catch (InterruptedException e) {
+            primaryTask.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for " + request.url());
+        }
+    }
+
+    private Response hedge(Request request, Request.Options options, CompletableFuture<Response> primary,
+                           Future<?> primaryTask) throws ExecutionException, InterruptedException {
+        Request hedgeRequest = target.reroute(request);
+        if (hedgeRequest == null || !hedgeBudget.tryRetry()) {
+            return primary.get();
+        }
+        log.debug("Hedging {} to {}", request.url(), hedgeRequest.url());
+        CompletableFuture<Response> hedge = new CompletableFuture<>();
+        Future<?> hedgeTask;
+        try {
+            hedgeTask = executor.submit(() -> run(hedgeRequest, options, hedge, false));
+        } catch (RejectedExecutionException e) {
+            hedgeBudget.cancelRetry();
+            return primary.get();
+        }
+        CompletableFuture<Response> winner = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        BiConsumer<Response, Throwable> settle = (response, error) -> {
+            if (error == null) {
+                if (!winner.complete(response)) {
+                    response.close();
+                }
+            } else if (failures.incrementAndGet() == 2) {
+                winner.completeExceptionally(error);
+            }
+        };
+        primary.whenComplete(settle);
+        hedge.whenComplete(settle);
+        try {
+            return winner.get();
+        } finally {
+            primaryTask.cancel(true);
+            hedgeTask.cancel(true);
+        }
+    }
+
+    private void run(Request request, Request.Options options, CompletableFuture<Response> result, boolean timed) {
+        long start = System.nanoTime();
+        try {
+            Response response = delegate.execute(request, options);
+            if (timed) {
+                record(System.nanoTime() - start);
+            }
+            result.complete(response);
+        } catch (Throwable t) {
+            result.completeExceptionally(t);
+        }
+    }
+
+    private void record(long nanos) {
+        recent.record(nanos);
+        long now = System.currentTimeMillis();
+        if (now - windowStart < policy.getWindowMs()) {
+            return;
+        }
+        synchronized (this) {
+            if (now - windowStart >= policy.getWindowMs()) {
+                if (recent.count() >= policy.getMinimumSamples()) {
+                    delayNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(policy.getMinimumDelayMs()),
+                            recent.percentileNanos(policy.getPercentile()));
+                }
+                recent.reset();
+                windowStart = now;
+            }
+        }
+    }
+
+    private boolean isHedged(Request request) {
+        RequestTemplate template = request.requestTemplate();
+        if (template == null || template.methodMetadata() == null) {
+            return false;
+        }
+        return hedgedMethods.computeIfAbsent(template.methodMetadata(), this::hedged);
+    }
+
+    private boolean hedged(MethodMetadata metadata) {
+        return policy.getMethods().contains(metadata.configKey())
+                || (metadata.method() != null && metadata.method().isAnnotationPresent(Hedged.class));
+    }
+
+    /**
+     * Shuts down the thread pool this client created; an executor passed in is left to its owner.
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    private static IOException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IOException(cause);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.hedge;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * When and how often requests are hedged. A request is hedged once it has been outstanding for longer than the
+ * configured percentile of recent response times, and hedges are capped to a ratio of requests.
+ *
+ * @author phaneesh
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class HedgingPolicy {
+
+    @Builder.Default
+    private double percentile = 0.95;
+
+    /**
+     * Response times are collected over this window before the hedge delay is recomputed.
+     */
+    @Builder.Default
+    private long windowMs = 10000;
+
+    /**
+     * No hedging happens until a window has collected at least this many samples.
+     */
+    @Builder.Default
+    private int minimumSamples = 100;
+
+    @Builder.Default
+    private long minimumDelayMs = 1;
+
+    @Builder.Default
+    private double maxHedgeRatio = 0.05;
+
+    /**
+     * Size of the thread pool hedged requests run on when the client creates its own. Requests that find the pool
+     * busy run on the calling thread, without a hedge.
+     */
+    @Builder.Default
+    private int maxThreads = 64;
+
+    /**
+     * Feign config keys (for example {@code TestApi#test()}) of methods to hedge, in addition to methods annotated
+     * with {@link Hedged}.
+     */
+    @Builder.Default
+    private Set<String> methods = Collections.emptySet();
+}
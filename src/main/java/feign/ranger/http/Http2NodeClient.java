@@ -0,0 +1,139 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.http;
+
+import com.flipkart.ranger.model.ServiceNode;
+import feign.Client;
+import feign.Request;
+import feign.Response;
+import feign.ranger.client.NodeDelta;
+import feign.ranger.client.NodeDiscovery;
+import feign.ranger.client.NodeListener;
+import feign.ranger.common.ShardInfo;
+import feign.ranger.routing.RoutingTable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Feign client over the JDK {@link HttpClient} speaking HTTP/2: h2 over TLS and h2c upgrades over plain connections.
+ * The JDK client keeps a single connection per host and port and multiplexes concurrent requests over it, so every
+ * discovered node is served by one connection. Nodes that answer over HTTP/1.1 are remembered and later requests to
+ * them are sent as HTTP/1.1 straight away, without upgrade attempts; a node is forgotten when it leaves.
+ * <p>
+ * By default one JDK client is built per distinct connect timeout and redirect setting of the request options, so
+ * requests with the same options share connections. A client passed to the constructor keeps its own settings.
+ *
+ * @author phaneesh
+ */
+public class Http2NodeClient implements Client, NodeListener, Closeable {
+
+    private final NodeDiscovery discovery;
+
+    private final HttpClient http;
+
+    private final JdkHttpClients clients;
+
+    private final Set<String> http1Nodes = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Use {@link feign.ranger.RangerTarget#http2Client()} to create a client for a target.
+     *
+     * @param discovery discovery client to follow, or null to use the client without one
+     */
+    public Http2NodeClient(NodeDiscovery discovery) {
+        this(discovery, null, new JdkHttpClients(HttpClient.Version.HTTP_2));
+    }
+
+    public Http2NodeClient(NodeDiscovery discovery, HttpClient http) {
+        this(discovery, http, null);
+    }
+
+    private Http2NodeClient(NodeDiscovery discovery, HttpClient http, JdkHttpClients clients) {
+        this.discovery = discovery;
+        this.http = http;
+        this.clients = clients;
+        if (discovery != null) {
+            discovery.subscribe(this);
+        }
+    }
+
+    @Override
+    public Response execute(Request request, Request.Options options) throws IOException {
+        String authority = RoutingTable.authorityOf(request.url());
+        HttpRequest httpRequest;
+        try {
+            HttpRequest.Builder builder = JavaHttpAsyncClient.newRequest(request, options);
+            if (authority != null && http1Nodes.contains(authority)) {
+                builder.version(HttpClient.Version.HTTP_1_1);
+            }
+            httpRequest = builder.build();
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid request to " + request.url(), e);
+        }
+        HttpResponse<byte[]> response;
+        try {
+            response = (http != null ? http : clients.get(options))
+                    .send(httpRequest, HttpResponse.BodyHandlers.ofByteArray());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        }
+        if (authority != null && response.version() == HttpClient.Version.HTTP_1_1 && negotiated(request)) {
+            http1Nodes.add(authority);
+        }
+        return JavaHttpAsyncClient.toResponse(request, response);
+    }
+
+    /**
+     * The JDK client only offers an h2c upgrade on plain connections for requests without a body, so only those
+     * requests, and requests over TLS, tell whether a node speaks HTTP/2.
+     */
+    private static boolean negotiated(Request request) {
+        return request.url().startsWith("https") || request.body() == null || request.body().length == 0;
+    }
+
+    @Override
+    public void onChange(NodeDelta delta) {
+        for (ServiceNode<ShardInfo> node : delta.getRemoved()) {
+            http1Nodes.remove(node.getHost() + ":" + node.getPort());
+        }
+    }
+
+    /**
+     * @return the protocol requests to the given host and port are sent with
+     */
+    public HttpClient.Version protocol(String authority) {
+        return http1Nodes.contains(authority) ? HttpClient.Version.HTTP_1_1 : HttpClient.Version.HTTP_2;
+    }
+
+    /**
+     * Stops following discovery. Connections are closed by the JDK client once they are idle.
+     */
+    @Override
+    public void close() {
+        if (discovery != null) {
+            discovery.removeListener(this);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.http;
+
+import feign.AsyncClient;
+import feign.Request;
+import feign.Response;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking feign client over the JDK {@link HttpClient}. Responses are buffered by the http client's own
+ * selector thread, so concurrency is not bounded by a thread pool.
+ * <p>
+ * The JDK client fixes the connect timeout and redirect policy when it is built, so by default one http client is
+ * built per distinct {@link Request.Options#connectTimeout()} and {@link Request.Options#isFollowRedirects()} in use.
+ * A client passed to the constructor is used for every request and its own settings apply; only the read timeout of
+ * the options is honoured then.
+ *
+ * @author phaneesh
+ */
+public class JavaHttpAsyncClient implements AsyncClient<Object> {
+
+    /**
+     * Headers the JDK client sets itself and refuses to take from callers.
+     */
+    private static final Set<String> RESTRICTED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        RESTRICTED_HEADERS.add("Connection");
+        RESTRICTED_HEADERS.add("Content-Length");
+        RESTRICTED_HEADERS.add("Date");
+        RESTRICTED_HEADERS.add("Expect");
+        RESTRICTED_HEADERS.add("From");
+        RESTRICTED_HEADERS.add("Host");
+        RESTRICTED_HEADERS.add("Upgrade");
+        RESTRICTED_HEADERS.add("Via");
+        RESTRICTED_HEADERS.add("Warning");
+    }
+
+    private final HttpClient client;
+
+    private final JdkHttpClients clients;
+
+    public JavaHttpAsyncClient() {
+        this.client = null;
+        this.clients = new JdkHttpClients(HttpClient.Version.HTTP_2);
+    }
+
+    public JavaHttpAsyncClient(HttpClient client) {
+        this.client = client;
+        this.clients = null;
+    }
+
+    @Override
+    public CompletableFuture<Response> execute(Request request, Request.Options options, Optional<Object> requestContext) {
+        HttpRequest httpRequest;
+        try {
+            httpRequest = newRequest(request, options).build();
+        } catch (RuntimeException e) {
+            CompletableFuture<Response> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        return client(options).sendAsync(httpRequest, HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> toResponse(request, response));
+    }
+
+    private HttpClient client(Request.Options options) {
+        return client != null ? client : clients.get(options);
+    }
+
+    static HttpRequest.Builder newRequest(Request request, Request.Options options) {
+        byte[] body = request.body();
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create(request.url()))
+                .timeout(Duration.ofMillis(options.readTimeoutUnit().toMillis(options.readTimeout())))
+                .method(request.httpMethod().name(), body == null || body.length == 0
+                        ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofByteArray(body));
+        for (Map.Entry<String, Collection<String>> header : request.headers().entrySet()) {
+            if (RESTRICTED_HEADERS.contains(header.getKey())) {
+                continue;
+            }
+            for (String value : header.getValue()) {
+                builder.header(header.getKey(), value);
+            }
+        }
+        return builder;
+    }
+
+    static Response toResponse(Request request, HttpResponse<byte[]> response) {
+        Map<String, Collection<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        response.headers().map().forEach((name, values) -> {
+            if (!name.startsWith(":")) {
+                headers.put(name, values);
+            }
+        });
+        return Response.builder()
+                .status(response.statusCode())
+                .headers(headers)
+                .request(request)
+                .body(response.body())
+                .build();
+    }
+}
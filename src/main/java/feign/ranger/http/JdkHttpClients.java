@@ -0,0 +1,55 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.http;
+
+import feign.Request;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * JDK http clients by connect timeout and redirect policy. The JDK client fixes both when it is built, so one client
+ * is built per distinct {@link Request.Options#connectTimeout()} and {@link Request.Options#isFollowRedirects()} in
+ * use and then reused.
+ *
+ * @author phaneesh
+ */
+class JdkHttpClients {
+
+    private final HttpClient.Version version;
+
+    private final ConcurrentMap<List<Object>, HttpClient> clients = new ConcurrentHashMap<>();
+
+    JdkHttpClients(HttpClient.Version version) {
+        this.version = version;
+    }
+
+    HttpClient get(Request.Options options) {
+        long connectTimeoutMs = options.connectTimeoutUnit().toMillis(options.connectTimeout());
+        List<Object> key = Arrays.asList(connectTimeoutMs, options.isFollowRedirects());
+        HttpClient existing = clients.get(key);
+        return existing != null ? existing : clients.computeIfAbsent(key, settings -> HttpClient.newBuilder()
+                .version(version)
+                .followRedirects(options.isFollowRedirects() ? HttpClient.Redirect.NORMAL : HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build());
+    }
+}
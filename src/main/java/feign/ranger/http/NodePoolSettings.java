@@ -0,0 +1,55 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.http;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Connection pool limits of a {@link PooledNodeClient}. Every discovered node gets its own pool.
+ *
+ * @author phaneesh
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class NodePoolSettings {
+
+    @Builder.Default
+    private int maxConnectionsPerNode = 20;
+
+    /**
+     * Keep-alive connections opened to a node as soon as it is discovered.
+     */
+    @Builder.Default
+    private int warmConnections = 2;
+
+    @Builder.Default
+    private long connectTimeoutMs = 2000;
+
+    /**
+     * Connections idle for longer than this are closed.
+     */
+    @Builder.Default
+    private long idleTimeoutMs = 60000;
+
+    @Builder.Default
+    private long evictionIntervalMs = 5000;
+}
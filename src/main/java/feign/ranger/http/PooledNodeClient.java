@@ -0,0 +1,219 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.http;
+
+import com.flipkart.ranger.model.ServiceNode;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import feign.Client;
+import feign.Request;
+import feign.Response;
+import feign.httpclient.ApacheHttpClient;
+import feign.ranger.client.NodeDelta;
+import feign.ranger.client.NodeDiscovery;
+import feign.ranger.client.NodeListener;
+import feign.ranger.common.ShardInfo;
+import feign.ranger.routing.RoutingTable;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feign client with a keep-alive connection pool per discovered node, built on the Apache http client (add
+ * {@code feign-httpclient} to use it). Pools follow discovery: connections to new nodes are opened before traffic
+ * reaches them and the pool of a node is closed as soon as the node leaves. Requests to addresses that are not
+ * discovered nodes, such as a fallback address, use a shared pool.
+ *
+ * @author phaneesh
+ */
+@Slf4j
+public class PooledNodeClient implements Client, NodeListener, Closeable {
+
+    private final NodeDiscovery discovery;
+
+    private final String httpScheme;
+
+    private final NodePoolSettings settings;
+
+    private final ConcurrentMap<String, NodePool> pools = new ConcurrentHashMap<>();
+
+    private final NodePool sharedPool;
+
+    private final ScheduledExecutorService maintenance;
+
+    /**
+     * Use {@link feign.ranger.RangerTarget#pooledClient(NodePoolSettings)} to create a client for a target.
+     */
+    public PooledNodeClient(NodeDiscovery discovery, String httpScheme, NodePoolSettings settings) {
+        this.discovery = discovery;
+        this.httpScheme = httpScheme;
+        this.settings = settings;
+        this.sharedPool = new NodePool(null, settings);
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("ranger-pool-%d")
+                .build());
+        maintenance.scheduleWithFixedDelay(this::evictIdle, settings.getEvictionIntervalMs(),
+                settings.getEvictionIntervalMs(), TimeUnit.MILLISECONDS);
+        discovery.subscribe(this);
+    }
+
+    /**
+     * Sends the request on the pool of its node. If the node leaves and its pool is closed before a connection is
+     * leased, the request is sent once more on the shared pool; a request made after {@link #close()} fails with an
+     * {@link IOException}.
+     */
+    @Override
+    public Response execute(Request request, Request.Options options) throws IOException {
+        NodePool pool = pool(request.url());
+        try {
+            return pool.client.execute(request, options);
+        } catch (IllegalStateException e) {
+            if (!pool.closed) {
+                throw e;
+            }
+            if (pool != sharedPool && !sharedPool.closed) {
+                return sharedPool.client.execute(request, options);
+            }
+            throw new IOException("Connection pool for " + request.url() + " is closed", e);
+        }
+    }
+
+    /**
+     * @return the pool of the discovered node the url points at, or the shared pool
+     */
+    NodePool pool(String url) {
+        String authority = RoutingTable.authorityOf(url);
+        NodePool pool = authority == null ? null : pools.get(authority);
+        return pool == null ? sharedPool : pool;
+    }
+
+    @Override
+    public void onChange(NodeDelta delta) {
+        for (ServiceNode<ShardInfo> node : delta.getRemoved()) {
+            NodePool pool = pools.remove(node.getHost() + ":" + node.getPort());
+            if (pool != null) {
+                pool.close();
+            }
+        }
+        for (ServiceNode<ShardInfo> node : delta.getAdded()) {
+            NodePool pool = new NodePool(new HttpHost(node.getHost(), node.getPort(), httpScheme), settings);
+            NodePool existing = pools.putIfAbsent(node.getHost() + ":" + node.getPort(), pool);
+            if (existing != null) {
+                pool.close();
+            } else if (settings.getWarmConnections() > 0) {
+                maintenance.execute(() -> warm(pool));
+            }
+        }
+    }
+
+    /**
+     * Opens keep-alive connections to a new node and hands them back to its pool.
+     */
+    private void warm(NodePool pool) {
+        HttpRoute route = new HttpRoute(pool.host, null, "https".equalsIgnoreCase(httpScheme));
+        int count = Math.min(settings.getWarmConnections(), settings.getMaxConnectionsPerNode());
+        List<HttpClientConnection> connections = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                HttpClientConnection connection = pool.manager.requestConnection(route, null)
+                        .get(settings.getConnectTimeoutMs(), TimeUnit.MILLISECONDS);
+                connections.add(connection);
+                if (!connection.isOpen()) {
+                    HttpClientContext context = HttpClientContext.create();
+                    pool.manager.connect(connection, route, (int) settings.getConnectTimeoutMs(), context);
+                    pool.manager.routeComplete(connection, route, context);
+                }
+            }
+        } catch (Exception e) {
+            log.debug("Could not open connections to {}", pool.host, e);
+        } finally {
+            for (HttpClientConnection connection : connections) {
+                pool.manager.releaseConnection(connection, null, settings.getIdleTimeoutMs(), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void evictIdle() {
+        sharedPool.evictIdle(settings.getIdleTimeoutMs());
+        for (NodePool pool : pools.values()) {
+            pool.evictIdle(settings.getIdleTimeoutMs());
+        }
+    }
+
+    /**
+     * Stops following discovery and closes every pool.
+     */
+    @Override
+    public void close() {
+        discovery.removeListener(this);
+        maintenance.shutdownNow();
+        for (NodePool pool : pools.values()) {
+            pool.close();
+        }
+        pools.clear();
+        sharedPool.close();
+    }
+
+    static final class NodePool {
+
+        private final HttpHost host;
+        private final PoolingHttpClientConnectionManager manager;
+        private final CloseableHttpClient http;
+        private final ApacheHttpClient client;
+        private volatile boolean closed;
+
+        private NodePool(HttpHost host, NodePoolSettings settings) {
+            this.host = host;
+            this.manager = new PoolingHttpClientConnectionManager();
+            this.manager.setDefaultMaxPerRoute(settings.getMaxConnectionsPerNode());
+            this.manager.setMaxTotal(host == null ? Integer.MAX_VALUE : settings.getMaxConnectionsPerNode());
+            this.http = HttpClients.custom()
+                    .setConnectionManager(manager)
+                    .build();
+            this.client = new ApacheHttpClient(http);
+        }
+
+        private void evictIdle(long idleTimeoutMs) {
+            manager.closeExpiredConnections();
+            manager.closeIdleConnections(idleTimeoutMs, TimeUnit.MILLISECONDS);
+        }
+
+        private void close() {
+            closed = true;
+            try {
+                http.close();
+            } catch (IOException e) {
+                log.debug("Could not close connection pool of {}", host, e);
+            }
+        }
+    }
+}
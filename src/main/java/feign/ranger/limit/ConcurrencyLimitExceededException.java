@@ -0,0 +1,44 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.limit;
+
+import lombok.Getter;
+
+/**
+ * Thrown, without a stack trace, when a request is rejected because the service or the selected node already has as
+ * many requests in flight as its concurrency limit allows.
+ *
+ * @author phaneesh
+ */
+@Getter
+public class ConcurrencyLimitExceededException extends RuntimeException {
+
+    private final String service;
+
+    private final String node;
+
+    private final int limit;
+
+    public ConcurrencyLimitExceededException(String service, String node, int limit) {
+        super(node == null
+                ? "Concurrency limit of " + limit + " reached for " + service
+                : "Concurrency limit of " + limit + " reached for " + service + " on " + node, null, false, false);
+        this.service = service;
+        this.node = node;
+        this.limit = limit;
+    }
+}
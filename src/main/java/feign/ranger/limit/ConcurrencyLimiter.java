@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.limit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import feign.ranger.metrics.RangerMetrics;
+import feign.ranger.routing.NodeStats;
+import feign.ranger.routing.RoutingEntry;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Adaptive concurrency limiter of a service and, when configured, of each of its nodes. Node limits are keyed by the
+ * node's stats, so they follow a node across routing table rebuilds and go away with it.
+ *
+ * @author phaneesh
+ */
+public class ConcurrencyLimiter {
+
+    private final String service;
+    private final ConcurrencyLimits settings;
+    private final RangerMetrics metrics;
+    private final GradientLimit serviceLimit;
+    private final Cache<NodeStats, GradientLimit> nodeLimits = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+
+    public ConcurrencyLimiter(String service, ConcurrencyLimits settings, RangerMetrics metrics) {
+        this.service = service;
+        this.settings = settings;
+        this.metrics = metrics;
+        this.serviceLimit = new GradientLimit(settings);
+    }
+
+    /**
+     * Takes a slot for a request to the given node, which may be null for requests that do not go to a discovered
+     * node. Every successful call must be followed by {@link #release}.
+     *
+     * @throws ConcurrencyLimitExceededException if the service or the node is at its limit
+     */
+    public void acquire(RoutingEntry entry) {
+        if (!serviceLimit.tryAcquire()) {
+            metrics.onLimitExceeded(service);
+            throw new ConcurrencyLimitExceededException(service, null, serviceLimit.limit());
+        }
+        GradientLimit nodeLimit = nodeLimit(entry);
+        if (nodeLimit != null && !nodeLimit.tryAcquire()) {
+            serviceLimit.release();
+            metrics.onLimitExceeded(service);
+            throw new ConcurrencyLimitExceededException(service, entry.getAuthority(), nodeLimit.limit());
+        }
+    }
+
+    /**
+     * Releases the slot of a completed request.
+     *
+     * @param dropped whether the request failed with a sign of overload: a timeout, a connection error or an
+     *                {@link #isOverload(int) overload status}. Other failures, such as application 5xx responses, are
+     *                normal samples and do not shrink the limit
+     */
+    public void release(RoutingEntry entry, long rttNanos, boolean dropped) {
+        serviceLimit.release(rttNanos, dropped);
+        GradientLimit nodeLimit = nodeLimit(entry);
+        if (nodeLimit != null) {
+            nodeLimit.release(rttNanos, dropped);
+        }
+    }
+
+    /**
+     * @return true for the statuses a server sheds load with, 429 and 503
+     */
+    public static boolean isOverload(int status) {
+        return status == 429 || status == 503;
+    }
+
+    public int limit() {
+        return serviceLimit.limit();
+    }
+
+    public int inFlight() {
+        return serviceLimit.inFlight();
+    }
+
+    private GradientLimit nodeLimit(RoutingEntry entry) {
+        if (!settings.isPerNode() || entry == null) {
+            return null;
+        }
+        try {
+            return nodeLimits.get(entry.getStats(), () -> new GradientLimit(settings));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
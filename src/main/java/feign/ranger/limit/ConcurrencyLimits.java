@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.limit;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Settings of the adaptive concurrency limit of a service, and optionally of each of its nodes. The limit follows the
+ * gradient between the long term and the latest response time: it grows while response times stay close to the long
+ * term average and shrinks as they rise.
+ *
+ * @author phaneesh
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ConcurrencyLimits {
+
+    @Builder.Default
+    private int initialLimit = 20;
+
+    @Builder.Default
+    private int minLimit = 2;
+
+    @Builder.Default
+    private int maxLimit = 500;
+
+    /**
+     * How much slower than the long term average a response may be before the limit is reduced.
+     */
+    @Builder.Default
+    private double rttTolerance = 1.5;
+
+    /**
+     * Weight of a new estimate in the limit, between 0 and 1.
+     */
+    @Builder.Default
+    private double smoothing = 0.2;
+
+    /**
+     * Number of samples the long term response time average spans.
+     */
+    @Builder.Default
+    private int longWindow = 600;
+
+    /**
+     * Also limit the requests in flight to each node, each with its own adaptive limit.
+     */
+    @Builder.Default
+    private boolean perNode = false;
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.limit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Adaptive limit on requests in flight. Each completed request compares its response time with an exponential
+ * average over a long window; the limit is scaled by that gradient (capped between 0.5 and 1) plus a small queue
+ * allowance that lets it grow, and is reduced by a tenth on every request dropped because of overload.
+ *
+ * @author phaneesh
+ */
+class GradientLimit {
+
+    private final ConcurrencyLimits settings;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+    private double estimatedLimit;
+    private double longRtt;
+
+    GradientLimit(ConcurrencyLimits settings) {
+        this.settings = settings;
+        this.limit = settings.getInitialLimit();
+        this.estimatedLimit = settings.getInitialLimit();
+    }
+
+    boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Releases a request that completed and adjusts the limit from its response time.
+     *
+     * @param dropped whether the request failed with a sign of overload
+     */
+    void release(long rttNanos, boolean dropped) {
+        int concurrent = inFlight.getAndDecrement();
+        update(rttNanos, concurrent, dropped);
+    }
+
+    private synchronized void update(long rttNanos, int concurrent, boolean dropped) {
+        double next;
+        if (dropped) {
+            next = estimatedLimit * 0.9;
+        } else {
+            if (rttNanos <= 0) {
+                return;
+            }
+            if (longRtt == 0) {
+                longRtt = rttNanos;
+            } else {
+                longRtt += (rttNanos - longRtt) / settings.getLongWindow();
+                if (longRtt / rttNanos > 2) {
+                    longRtt *= 0.95;
+                }
+            }
+            if (concurrent < estimatedLimit / 2) {
+                return;
+            }
+            double gradient = Math.max(0.5, Math.min(1.0, settings.getRttTolerance() * longRtt / rttNanos));
+            double estimate = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+            next = estimatedLimit * (1 - settings.getSmoothing()) + estimate * settings.getSmoothing();
+        }
+        estimatedLimit = Math.max(settings.getMinLimit(), Math.min(settings.getMaxLimit(), next));
+        limit = (int) estimatedLimit;
+    }
+
+    int limit() {
+        return limit;
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+}
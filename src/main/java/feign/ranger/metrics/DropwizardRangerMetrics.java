@@ -0,0 +1,197 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.metrics;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import feign.ranger.routing.NodeStats;
+import feign.ranger.routing.RoutingEntry;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes ranger metrics to a Dropwizard {@link MetricRegistry} (add {@code io.dropwizard.metrics:metrics-core} to
+ * use it). Metrics are named {@code <prefix>.<service>.<metric>} and, per node,
+ * {@code <prefix>.<service>.nodes.<host>_<port>.<metric>}. The {@code lastChangeAgeMs} gauge shows how long ago the
+ * node list last changed and {@code lastRefreshAgeMs} how stale discovery is. Node metrics are removed from the
+ * registry when the node leaves the service, and late reports for it from requests still in flight are ignored.
+ *
+ * @author phaneesh
+ */
+public class DropwizardRangerMetrics implements RangerMetrics {
+
+    private final MetricRegistry registry;
+
+    private final String prefix;
+
+    private final ConcurrentMap<String, ServiceMeters> services = new ConcurrentHashMap<>();
+
+    private final Cache<NodeStats, Boolean> removed = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+
+    public DropwizardRangerMetrics(MetricRegistry registry) {
+        this(registry, "ranger");
+    }
+
+    public DropwizardRangerMetrics(MetricRegistry registry, String prefix) {
+        this.registry = registry;
+        this.prefix = prefix;
+    }
+
+    @Override
+    public void onRefresh(String service, int nodes, long durationNanos, boolean changed) {
+        ServiceMeters meters = service(service);
+        meters.refresh.update(durationNanos, TimeUnit.NANOSECONDS);
+        meters.nodes = nodes;
+        meters.lastRefreshMillis = System.currentTimeMillis();
+        if (changed) {
+            meters.lastChangeMillis = meters.lastRefreshMillis;
+        }
+    }
+
+    @Override
+    public void onDeserializationFailure(String service) {
+        service(service).deserializationFailures.mark();
+    }
+
+    @Override
+    public void onSelection(String service, RoutingEntry entry) {
+        if (isRemoved(entry)) {
+            return;
+        }
+        ServiceMeters meters = service(service);
+        NodeMeters node = meters.node(entry.getAuthority());
+        node.selections.mark();
+        forgetIfRemoved(meters, entry, node);
+    }
+
+    @Override
+    public void onNoNodes(String service) {
+        service(service).noNodes.mark();
+    }
+
+    @Override
+    public void onLimitExceeded(String service) {
+        service(service).limitExceeded.mark();
+    }
+
+    @Override
+    public void onResponse(String service, RoutingEntry entry, long latencyNanos, boolean success) {
+        if (isRemoved(entry)) {
+            return;
+        }
+        ServiceMeters meters = service(service);
+        NodeMeters node = meters.node(entry.getAuthority());
+        node.responses.update(latencyNanos, TimeUnit.NANOSECONDS);
+        if (!success) {
+            node.failures.mark();
+        }
+        forgetIfRemoved(meters, entry, node);
+    }
+
+    @Override
+    public void onNodeRemoved(String service, RoutingEntry entry) {
+        removed.put(entry.getStats(), Boolean.TRUE);
+        ServiceMeters meters = services.get(service);
+        if (meters != null) {
+            NodeMeters node = meters.nodeMeters.remove(entry.getAuthority());
+            if (node != null) {
+                node.remove();
+            }
+        }
+    }
+
+    private boolean isRemoved(RoutingEntry entry) {
+        return removed.getIfPresent(entry.getStats()) != null;
+    }
+
+    /**
+     * Drops node meters created by a report that raced with the node's removal.
+     */
+    private void forgetIfRemoved(ServiceMeters meters, RoutingEntry entry, NodeMeters node) {
+        if (isRemoved(entry) && meters.nodeMeters.remove(entry.getAuthority(), node)) {
+            node.remove();
+        }
+    }
+
+    private ServiceMeters service(String service) {
+        ServiceMeters meters = services.get(service);
+        return meters != null ? meters : services.computeIfAbsent(service, ServiceMeters::new);
+    }
+
+    private final class ServiceMeters {
+
+        private final String name;
+        private final Timer refresh;
+        private final Meter deserializationFailures;
+        private final Meter noNodes;
+        private final Meter limitExceeded;
+        private final ConcurrentMap<String, NodeMeters> nodeMeters = new ConcurrentHashMap<>();
+        private volatile int nodes;
+        private volatile long lastRefreshMillis;
+        private volatile long lastChangeMillis;
+
+        private ServiceMeters(String service) {
+            this.name = MetricRegistry.name(prefix, service);
+            this.refresh = registry.timer(MetricRegistry.name(name, "refresh"));
+            this.deserializationFailures = registry.meter(MetricRegistry.name(name, "deserializationFailures"));
+            this.noNodes = registry.meter(MetricRegistry.name(name, "noNodes"));
+            this.limitExceeded = registry.meter(MetricRegistry.name(name, "limitExceeded"));
+            registry.gauge(MetricRegistry.name(name, "nodes"), () -> (Gauge<Integer>) () -> nodes);
+            registry.gauge(MetricRegistry.name(name, "lastRefreshAgeMs"), () -> (Gauge<Long>) () -> age(lastRefreshMillis));
+            registry.gauge(MetricRegistry.name(name, "lastChangeAgeMs"), () -> (Gauge<Long>) () -> age(lastChangeMillis));
+        }
+
+        private NodeMeters node(String authority) {
+            NodeMeters meters = nodeMeters.get(authority);
+            return meters != null ? meters : nodeMeters.computeIfAbsent(authority,
+                    key -> new NodeMeters(MetricRegistry.name(name, "nodes", key.replace('.', '_').replace(':', '_'))));
+        }
+
+        private long age(long millis) {
+            return millis == 0 ? -1 : System.currentTimeMillis() - millis;
+        }
+    }
+
+    private final class NodeMeters {
+
+        private final String name;
+        private final Meter selections;
+        private final Timer responses;
+        private final Meter failures;
+
+        private NodeMeters(String name) {
+            this.name = name;
+            this.selections = registry.meter(MetricRegistry.name(name, "selections"));
+            this.responses = registry.timer(MetricRegistry.name(name, "responses"));
+            this.failures = registry.meter(MetricRegistry.name(name, "failures"));
+        }
+
+        private void remove() {
+            registry.remove(MetricRegistry.name(name, "selections"));
+            registry.remove(MetricRegistry.name(name, "responses"));
+            registry.remove(MetricRegistry.name(name, "failures"));
+        }
+    }
+}
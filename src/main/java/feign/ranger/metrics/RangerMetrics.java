@@ -0,0 +1,79 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.metrics;
+
+import feign.ranger.routing.RoutingEntry;
+
+/**
+ * Instrumentation hooks for discovery and routing. Every hook defaults to doing nothing, so an implementation only
+ * overrides what it records, and the {@link #NOOP} default costs an empty call on the request path. Hooks are called
+ * from request and discovery threads and must not block.
+ *
+ * @author phaneesh
+ */
+public interface RangerMetrics {
+
+    RangerMetrics NOOP = new RangerMetrics() {
+    };
+
+    /**
+     * Called after every refresh of a service's node list.
+     *
+     * @param nodes         discovered nodes after the refresh
+     * @param durationNanos time taken to read and apply the node list
+     * @param changed       whether the node list changed
+     */
+    default void onRefresh(String service, int nodes, long durationNanos, boolean changed) {
+    }
+
+    /**
+     * Called when a node payload published by a provider cannot be parsed.
+     */
+    default void onDeserializationFailure(String service) {
+    }
+
+    /**
+     * Called when a node is picked for a request or a retry.
+     */
+    default void onSelection(String service, RoutingEntry entry) {
+    }
+
+    /**
+     * Called when a request cannot be routed because no node is available.
+     */
+    default void onNoNodes(String service) {
+    }
+
+    /**
+     * Called when a request is rejected by the concurrency limiter.
+     */
+    default void onLimitExceeded(String service) {
+    }
+
+    /**
+     * Called when a node leaves a service's node list, so that metrics kept for the node can be dropped. Requests
+     * still in flight to the node may report their selection or response afterwards with the same entry.
+     */
+    default void onNodeRemoved(String service, RoutingEntry entry) {
+    }
+
+    /**
+     * Called when a request sent to a node completes. Only reported for clients wrapped by the target.
+     */
+    default void onResponse(String service, RoutingEntry entry, long latencyNanos, boolean success) {
+    }
+}
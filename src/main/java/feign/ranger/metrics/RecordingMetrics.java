@@ -0,0 +1,166 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.metrics;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import feign.ranger.common.LatencyHistogram;
+import feign.ranger.routing.NodeStats;
+import feign.ranger.routing.RoutingEntry;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory metrics kept with striped counters and log-linear latency histograms, per service and per node. Metrics
+ * of a node are dropped when it leaves the service, and late reports for it from requests still in flight are
+ * ignored. A node that joins again under the same address is tracked afresh.
+ *
+ * @author phaneesh
+ */
+public class RecordingMetrics implements RangerMetrics {
+
+    private final ConcurrentMap<String, ServiceMetrics> services = new ConcurrentHashMap<>();
+
+    private final Cache<NodeStats, Boolean> removed = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+
+    @Override
+    public void onRefresh(String service, int nodes, long durationNanos, boolean changed) {
+        ServiceMetrics metrics = service(service);
+        metrics.refreshes.increment();
+        metrics.refreshDuration.record(durationNanos);
+        metrics.nodeCount = nodes;
+        metrics.lastRefreshMillis = System.currentTimeMillis();
+        if (changed) {
+            metrics.changes.increment();
+            metrics.lastChangeMillis = metrics.lastRefreshMillis;
+        }
+    }
+
+    @Override
+    public void onDeserializationFailure(String service) {
+        service(service).deserializationFailures.increment();
+    }
+
+    @Override
+    public void onSelection(String service, RoutingEntry entry) {
+        if (isRemoved(entry)) {
+            return;
+        }
+        ServiceMetrics metrics = service(service);
+        NodeMetrics node = metrics.node(entry.getAuthority());
+        node.selections.increment();
+        forgetIfRemoved(metrics, entry, node);
+    }
+
+    @Override
+    public void onNoNodes(String service) {
+        service(service).noNodes.increment();
+    }
+
+    @Override
+    public void onLimitExceeded(String service) {
+        service(service).limitExceeded.increment();
+    }
+
+    @Override
+    public void onResponse(String service, RoutingEntry entry, long latencyNanos, boolean success) {
+        if (isRemoved(entry)) {
+            return;
+        }
+        ServiceMetrics metrics = service(service);
+        NodeMetrics node = metrics.node(entry.getAuthority());
+        node.responses.increment();
+        node.latency.record(latencyNanos);
+        if (!success) {
+            node.failures.increment();
+        }
+        forgetIfRemoved(metrics, entry, node);
+    }
+
+    @Override
+    public void onNodeRemoved(String service, RoutingEntry entry) {
+        removed.put(entry.getStats(), Boolean.TRUE);
+        ServiceMetrics metrics = services.get(service);
+        if (metrics != null) {
+            metrics.nodes.remove(entry.getAuthority());
+        }
+    }
+
+    private boolean isRemoved(RoutingEntry entry) {
+        return removed.getIfPresent(entry.getStats()) != null;
+    }
+
+    /**
+     * Drops node metrics created by a report that raced with the node's removal.
+     */
+    private void forgetIfRemoved(ServiceMetrics metrics, RoutingEntry entry, NodeMetrics node) {
+        if (isRemoved(entry)) {
+            metrics.nodes.remove(entry.getAuthority(), node);
+        }
+    }
+
+    public ServiceMetrics service(String service) {
+        ServiceMetrics metrics = services.get(service);
+        return metrics != null ? metrics : services.computeIfAbsent(service, key -> new ServiceMetrics());
+    }
+
+    public Map<String, ServiceMetrics> services() {
+        return Collections.unmodifiableMap(services);
+    }
+
+    @Getter
+    public static class ServiceMetrics {
+
+        private final LongAdder refreshes = new LongAdder();
+        private final LongAdder changes = new LongAdder();
+        private final LongAdder deserializationFailures = new LongAdder();
+        private final LongAdder noNodes = new LongAdder();
+        private final LongAdder limitExceeded = new LongAdder();
+        private final LatencyHistogram refreshDuration = new LatencyHistogram();
+        private volatile int nodeCount;
+        private volatile long lastRefreshMillis;
+        private volatile long lastChangeMillis;
+        @Getter(AccessLevel.NONE)
+        private final ConcurrentMap<String, NodeMetrics> nodes = new ConcurrentHashMap<>();
+
+        public NodeMetrics node(String authority) {
+            NodeMetrics metrics = nodes.get(authority);
+            return metrics != null ? metrics : nodes.computeIfAbsent(authority, key -> new NodeMetrics());
+        }
+
+        public Map<String, NodeMetrics> nodes() {
+            return Collections.unmodifiableMap(nodes);
+        }
+    }
+
+    @Getter
+    public static class NodeMetrics {
+
+        private final LongAdder selections = new LongAdder();
+        private final LongAdder responses = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+    }
+}
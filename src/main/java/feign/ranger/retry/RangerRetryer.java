@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.retry;
+
+import feign.Request;
+import feign.RetryableException;
+import feign.Retryer;
+
+import java.util.function.Consumer;
+
+/**
+ * Retryer that only retries while the target's {@link RetryBudget} allows it. Backoff and attempt limits come from
+ * the delegate. Node selection for the retry happens in {@link feign.ranger.RangerTarget#apply}, which never reuses a
+ * node the call has already tried while other nodes are available.
+ *
+ * @author phaneesh
+ */
+public class RangerRetryer implements Retryer {
+
+    private final RetryBudget budget;
+
+    private final Retryer delegate;
+
+    private final Consumer<Request> onRetry;
+
+    public RangerRetryer(RetryBudget budget, Retryer delegate) {
+        this(budget, delegate, request -> {
+        });
+    }
+
+    /**
+     * @param onRetry called with the failed request of every attempt that is going to be retried
+     */
+    public RangerRetryer(RetryBudget budget, Retryer delegate, Consumer<Request> onRetry) {
+        this.budget = budget;
+        this.delegate = delegate;
+        this.onRetry = onRetry;
+    }
+
+    /**
+     * Checks the budget before the delegate so that a call that may not retry fails without sleeping through the
+     * delegate's backoff first.
+     */
+    @Override
+    public void continueOrPropagate(RetryableException e) {
+        if (!budget.tryRetry()) {
+            throw e;
+        }
+        try {
+            delegate.continueOrPropagate(e);
+        } catch (RuntimeException propagated) {
+            budget.cancelRetry();
+            throw propagated;
+        }
+        if (e.request() != null) {
+            onRetry.accept(e.request());
+        }
+    }
+
+    @Override
+    public Retryer clone() {
+        return new RangerRetryer(budget, delegate.clone(), onRetry);
+    }
+}
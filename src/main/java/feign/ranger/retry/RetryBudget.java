@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.retry;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caps retries to a ratio of requests so that retries cannot amplify load during an upstream brownout. Requests and
+ * retries are counted over the current and the previous window; a retry is allowed while retries stay below
+ * {@code minRetriesPerSecond} plus {@code ratio} times the requests.
+ *
+ * @author phaneesh
+ */
+public class RetryBudget {
+
+    private static final long WINDOW_MS = 10000;
+
+    private final double ratio;
+
+    private final long reserve;
+
+    private final LongAdder requests = new LongAdder();
+
+    private final LongAdder retries = new LongAdder();
+
+    private volatile long previousRequests;
+
+    private volatile long previousRetries;
+
+    private volatile long windowStart = System.currentTimeMillis();
+
+    public RetryBudget(double ratio, int minRetriesPerSecond) {
+        this.ratio = ratio;
+        this.reserve = minRetriesPerSecond * 2L * WINDOW_MS / 1000;
+    }
+
+    public static RetryBudget defaultBudget() {
+        return new RetryBudget(0.2, 10);
+    }
+
+    public void onRequest() {
+        roll();
+        requests.increment();
+    }
+
+    /**
+     * @return true if a retry may be made, in which case it is counted against the budget
+     */
+    public boolean tryRetry() {
+        roll();
+        long allowed = reserve + (long) (ratio * (previousRequests + requests.sum()));
+        if (previousRetries + retries.sum() >= allowed) {
+            return false;
+        }
+        retries.increment();
+        return true;
+    }
+
+    /**
+     * Returns a retry granted by {@link #tryRetry()} that was not made after all.
+     */
+    public void cancelRetry() {
+        retries.decrement();
+    }
+
+    private void roll() {
+        long now = System.currentTimeMillis();
+        if (now - windowStart < WINDOW_MS) {
+            return;
+        }
+        synchronized (this) {
+            if (now - windowStart >= WINDOW_MS) {
+                previousRequests = requests.sumThenReset();
+                previousRetries = retries.sumThenReset();
+                windowStart = now;
+            }
+        }
+    }
+}
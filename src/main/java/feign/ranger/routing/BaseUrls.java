@@ -0,0 +1,52 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.routing;
+
+/**
+ * Pre-built base urls (scheme, host, port and root path prefix) for every entry of a {@link RoutingTable}.
+ *
+ * @author phaneesh
+ */
+public final class BaseUrls {
+
+    public static final BaseUrls EMPTY = new BaseUrls(RoutingTable.EMPTY, new String[0]);
+
+    private final RoutingTable table;
+
+    private final String[] urls;
+
+    private BaseUrls(RoutingTable table, String[] urls) {
+        this.table = table;
+        this.urls = urls;
+    }
+
+    public static BaseUrls of(RoutingTable table, String httpScheme, String rootPathPrefix) {
+        String[] urls = new String[table.size()];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = table.get(i).baseUrl(httpScheme, rootPathPrefix);
+        }
+        return new BaseUrls(table, urls);
+    }
+
+    public boolean covers(RoutingTable other) {
+        return table == other;
+    }
+
+    public String get(RoutingEntry entry) {
+        return urls[entry.getIndex()];
+    }
+}
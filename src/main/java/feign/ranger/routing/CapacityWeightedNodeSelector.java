@@ -0,0 +1,32 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.routing;
+
+import feign.ranger.common.ShardInfo;
+
+/**
+ * Picks nodes at random in proportion to the weight they publish in {@link ShardInfo#getWeight()}. Nodes without a
+ * weight count as 1.
+ *
+ * @author phaneesh
+ */
+public class CapacityWeightedNodeSelector extends WeightedRandomNodeSelector {
+
+    public CapacityWeightedNodeSelector() {
+        super(NodeWeigher.capacity());
+    }
+}
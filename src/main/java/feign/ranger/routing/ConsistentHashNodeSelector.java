@@ -0,0 +1,190 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.routing;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import feign.RequestTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sticky routing: requests with the same routing key go to the same node for as long as it is routable. Nodes are
+ * placed on a hash ring with a number of virtual points each, so when nodes join or leave only the keys of the ring
+ * segments they own move. The ring is built once per routing table, kept on the table so that a selector serving
+ * several tables does not rebuild it on every switch, and reuses the points of nodes that were already present.
+ * <p>
+ * With a load factor, the ring is walked past nodes that have more than that factor times the average number of
+ * requests in flight (consistent hashing with bounded loads). Requests in flight are only counted when the feign
+ * client is wrapped with {@link feign.ranger.RangerTarget#client(feign.Client)}. Requests without a key, and retries,
+ * are routed by the fallback selector.
+ *
+ * @author phaneesh
+ */
+public class ConsistentHashNodeSelector implements NodeSelector {
+
+    private static final HashFunction HASH = Hashing.murmur3_32_fixed();
+
+    private static final int DEFAULT_POINTS_PER_NODE = 160;
+
+    private static final double DEFAULT_LOAD_FACTOR = 1.25;
+
+    private final RoutingKey routingKey;
+
+    private final NodeSelector fallback;
+
+    private final int pointsPerNode;
+
+    private final double loadFactor;
+
+    /**
+     * The most recently built ring, only used to reuse the point hashes of nodes that are still present.
+     */
+    private volatile Ring latest = Ring.EMPTY;
+
+    public ConsistentHashNodeSelector(RoutingKey routingKey) {
+        this(routingKey, new RandomNodeSelector(), DEFAULT_POINTS_PER_NODE, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * @param loadFactor how far above the average in flight count a node may go before keys spill to the next node
+     *                   on the ring, or 0 to disable load bounding
+     */
+    public ConsistentHashNodeSelector(RoutingKey routingKey, NodeSelector fallback, int pointsPerNode,
+                                      double loadFactor) {
+        this.routingKey = routingKey;
+        this.fallback = fallback;
+        this.pointsPerNode = pointsPerNode;
+        this.loadFactor = loadFactor;
+    }
+
+    @Override
+    public RoutingEntry select(RoutingTable table) {
+        return fallback.select(table);
+    }
+
+    @Override
+    public boolean isSticky() {
+        return true;
+    }
+
+    @Override
+    public RoutingEntry select(RoutingTable table, RequestTemplate template) {
+        String key = routingKey.of(template);
+        return key == null ? fallback.select(table) : select(table, key);
+    }
+
+    public RoutingEntry select(RoutingTable table, String key) {
+        if (table.size() <= 1) {
+            return table.random();
+        }
+        Ring current = table.derive(this, this::ring);
+        long[] points = current.points;
+        int position = search(points, HASH.hashString(key, StandardCharsets.UTF_8).asInt());
+        RoutingEntry entry = table.get(owner(points[position]));
+        if (loadFactor <= 0 || entry.getStats().inFlight() == 0) {
+            return entry;
+        }
+        long total = 0;
+        for (int i = 0; i < table.size(); i++) {
+            total += table.get(i).getStats().inFlight();
+        }
+        double limit = Math.ceil(loadFactor * (total + 1) / table.size());
+        for (int i = 0; i < points.length; i++) {
+            RoutingEntry candidate = table.get(owner(points[(position + i) % points.length]));
+            if (candidate.getStats().inFlight() < limit) {
+                return candidate;
+            }
+        }
+        return entry;
+    }
+
+    private Ring ring(RoutingTable table) {
+        Ring built = new Ring(table, latest, pointsPerNode);
+        latest = built;
+        return built;
+    }
+
+    /**
+     * @return the position of the first point at or after the hash, wrapping around the ring
+     */
+    private static int search(long[] points, int hash) {
+        long target = (long) hash << 32;
+        int low = 0;
+        int high = points.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (points[mid] < target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low == points.length ? 0 : low;
+    }
+
+    private static int owner(long point) {
+        return (int) point;
+    }
+
+    /**
+     * Ring points packed as the 32 bit point hash in the upper half and the routing entry index in the lower half, so
+     * that sorting the packed values orders the ring.
+     */
+    private static final class Ring {
+
+        private static final Ring EMPTY = new Ring();
+
+        private final long[] points;
+        private final Map<String, int[]> hashesByAuthority;
+
+        private Ring() {
+            this.points = new long[0];
+            this.hashesByAuthority = Collections.emptyMap();
+        }
+
+        private Ring(RoutingTable table, Ring previous, int pointsPerNode) {
+            this.points = new long[table.size() * pointsPerNode];
+            this.hashesByAuthority = new HashMap<>(table.size() * 2);
+            int next = 0;
+            for (int i = 0; i < table.size(); i++) {
+                String authority = table.get(i).getAuthority();
+                int[] hashes = previous.hashesByAuthority.get(authority);
+                if (hashes == null || hashes.length != pointsPerNode) {
+                    hashes = hashes(authority, pointsPerNode);
+                }
+                hashesByAuthority.put(authority, hashes);
+                for (int hash : hashes) {
+                    points[next++] = ((long) hash << 32) | i;
+                }
+            }
+            Arrays.sort(points);
+        }
+
+        private static int[] hashes(String authority, int count) {
+            int[] hashes = new int[count];
+            for (int i = 0; i < count; i++) {
+                hashes[i] = HASH.hashString(authority + "#" + i, StandardCharsets.UTF_8).asInt();
+            }
+            return hashes;
+        }
+    }
+}
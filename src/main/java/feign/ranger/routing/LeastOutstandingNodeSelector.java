@@ -0,0 +1,45 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.routing;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Power of two choices: picks two distinct nodes at random and sends the request to the one with fewer requests in
+ * flight. This avoids herding on a single idle node while steering traffic away from loaded ones.
+ *
+ * @author phaneesh
+ */
+public class LeastOutstandingNodeSelector implements NodeSelector {
+
+    @Override
+    public RoutingEntry select(RoutingTable table) {
+        int size = table.size();
+        if (size <= 1) {
+            return table.random();
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        RoutingEntry a = table.get(first);
+        RoutingEntry b = table.get(second);
+        return b.getStats().inFlight() < a.getStats().inFlight() ? b : a;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.routing;
+
+import feign.RequestTemplate;
+
+/**
+ * Strategy used to pick the node a request is sent to.
+ *
+ * @author phaneesh
+ */
+public interface NodeSelector {
+
+    /**
+     * @return the selected entry, or null if the table is empty
+     */
+    RoutingEntry select(RoutingTable table);
+
+    /**
+     * Selects the node for a new request. Strategies that route by request attributes override this.
+     *
+     * @return the selected entry, or null if the table is empty
+     */
+    default RoutingEntry select(RoutingTable table, RequestTemplate template) {
+        return select(table);
+    }
+
+    /**
+     * @return whether a request is always routed to the same node while that node is routable, so that picking
+     * again for the same request cannot move it elsewhere
+     */
+    default boolean isSticky() {
+        return false;
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.routing;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live, per-node request statistics. A node keeps the same instance for as long as it stays discovered, so the
+ * statistics survive routing table rebuilds and are shared by every target routing to the node.
+ *
+ * @author phaneesh
+ */
+public class NodeStats {
+
+    private static final double LATENCY_DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final LongAdder inFlight = new LongAdder();
+
+    private volatile boolean latencyMeasured;
+
+    private volatile double latencyEwma;
+
+    private volatile long latencyStamp;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    private final LongAdder windowRequests = new LongAdder();
+
+    private final LongAdder windowFailures = new LongAdder();
+
+    private volatile long ejectedUntil;
+
+    private int ejections;
+
+    private final long firstSeen = System.nanoTime();
+
+    private final boolean initial;
+
+    public NodeStats() {
+        this(false);
+    }
+
+    /**
+     * @param initial true for nodes found by the first discovery of a service, which take full traffic right away
+     */
+    NodeStats(boolean initial) {
+        this.initial = initial;
+    }
+
+    /**
+     * @return nanoseconds since the node was first discovered, or {@link Long#MAX_VALUE} for a node that was found by
+     * the first discovery of its service
+     */
+    public long age(long now) {
+        return initial ? Long.MAX_VALUE : now - firstSeen;
+    }
+
+    public void requestStarted() {
+        inFlight.increment();
+    }
+
+    public void requestFinished() {
+        inFlight.decrement();
+    }
+
+    public long inFlight() {
+        return inFlight.sum();
+    }
+
+    /**
+     * Records an observed response time. The estimate follows peaks immediately and decays towards lower
+     * observations with a time constant of 10 seconds.
+     */
+    public void recordLatency(long nanos) {
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (!latencyMeasured || nanos > latencyEwma) {
+                latencyEwma = nanos;
+                latencyMeasured = true;
+            } else {
+                double weight = Math.exp(-(now - latencyStamp) / LATENCY_DECAY_NANOS);
+                latencyEwma = latencyEwma * weight + nanos * (1 - weight);
+            }
+            latencyStamp = now;
+        }
+    }
+
+    /**
+     * @return the peak ewma of response times in nanoseconds, decayed towards {@code neutralNanos} for the time the
+     * node has gone without a response, or {@code neutralNanos} if no response was observed yet
+     */
+    public double latencyEwma(double neutralNanos) {
+        if (!latencyMeasured) {
+            return neutralNanos;
+        }
+        double weight = Math.exp(-(System.nanoTime() - latencyStamp) / LATENCY_DECAY_NANOS);
+        return latencyEwma * weight + neutralNanos * (1 - weight);
+    }
+
+    public void recordSuccess() {
+        windowRequests.increment();
+        if (consecutiveFailures.get() != 0) {
+            consecutiveFailures.set(0);
+        }
+    }
+
+    /**
+     * @return the number of consecutive failures including this one
+     */
+    public int recordFailure() {
+        windowRequests.increment();
+        windowFailures.increment();
+        return consecutiveFailures.incrementAndGet();
+    }
+
+    public long windowRequestsThenReset() {
+        return windowRequests.sumThenReset();
+    }
+
+    public long windowFailuresThenReset() {
+        return windowFailures.sumThenReset();
+    }
+
+    public boolean isEjected() {
+        return ejectedUntil != 0;
+    }
+
+    public long ejectedUntil() {
+        return ejectedUntil;
+    }
+
+    /**
+     * Ejects the node. Every ejection since the node was last forgiven doubles the ejection time, up to the maximum.
+     *
+     * @return the ejection time in milliseconds
+     */
+    public synchronized long eject(long now, long baseEjectionTimeMs, long maxEjectionTimeMs) {
+        ejections++;
+        long duration = Math.min(maxEjectionTimeMs, baseEjectionTimeMs << Math.min(ejections - 1, 20));
+        ejectedUntil = now + duration;
+        consecutiveFailures.set(0);
+        return duration;
+    }
+
+    public synchronized void restore() {
+        ejectedUntil = 0;
+    }
+
+    /**
+     * Called for every healthy interval of a node that is not ejected, so that a node that recovered goes back to the
+     * base ejection time.
+     */
+    public synchronized void forgiveEjection() {
+        if (ejections > 0) {
+            ejections--;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.routing;
+
+import feign.ranger.common.ShardInfo;
+
+/**
+ * Assigns a relative weight to a node. Nodes with a weight of zero or less are never picked by weighted selection.
+ *
+ * @author phaneesh
+ */
+public interface NodeWeigher {
+
+    double weight(RoutingEntry entry);
+
+    /**
+     * @return a weigher that reads the weight nodes publish in {@link ShardInfo#getWeight()}, or 1 if they publish none
+     */
+    static NodeWeigher capacity() {
+        return entry -> {
+            ShardInfo data = entry.getNode().getNodeData();
+            return data == null || data.getWeight() == null ? 1 : data.getWeight();
+        };
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.routing;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency aware power of two choices. Each candidate is scored by the peak ewma of its observed response times
+ * multiplied by its requests in flight plus one, and the lower score wins. Idle nodes decay towards a neutral latency
+ * so that a node which was slow once is probed again instead of being starved. Response times are only observed when
+ * the feign client is wrapped with {@link feign.ranger.RangerTarget#client(feign.Client)}.
+ *
+ * @author phaneesh
+ */
+public class PeakEwmaNodeSelector implements NodeSelector {
+
+    private final double neutralNanos;
+
+    public PeakEwmaNodeSelector() {
+        this(0);
+    }
+
+    /**
+     * @param neutralLatencyMs latency assumed for nodes without recent observations
+     */
+    public PeakEwmaNodeSelector(long neutralLatencyMs) {
+        this.neutralNanos = TimeUnit.MILLISECONDS.toNanos(neutralLatencyMs);
+    }
+
+    @Override
+    public RoutingEntry select(RoutingTable table) {
+        int size = table.size();
+        if (size <= 1) {
+            return table.random();
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        RoutingEntry a = table.get(first);
+        RoutingEntry b = table.get(second);
+        return score(b) < score(a) ? b : a;
+    }
+
+    private double score(RoutingEntry entry) {
+        NodeStats stats = entry.getStats();
+        return (stats.latencyEwma(neutralNanos) + 1) * (stats.inFlight() + 1);
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.routing;
+
+/**
+ * Picks a node uniformly at random. This is the default strategy.
+ *
+ * @author phaneesh
+ */
+public class RandomNodeSelector implements NodeSelector {
+
+    @Override
+    public RoutingEntry select(RoutingTable table) {
+        return table.random();
+    }
+}
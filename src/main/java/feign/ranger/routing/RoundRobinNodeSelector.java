@@ -0,0 +1,38 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.routing;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cycles through the nodes of the table in order.
+ *
+ * @author phaneesh
+ */
+public class RoundRobinNodeSelector implements NodeSelector {
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Override
+    public RoutingEntry select(RoutingTable table) {
+        int size = table.size();
+        if (size == 0) {
+            return null;
+        }
+        return table.get(Math.floorMod(next.getAndIncrement(), size));
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.routing;
+
+import com.flipkart.ranger.model.ServiceNode;
+import feign.ranger.common.ShardInfo;
+import lombok.Getter;
+
+/**
+ * A single routable node inside a {@link RoutingTable}.
+ *
+ * @author phaneesh
+ */
+@Getter
+public class RoutingEntry {
+
+    private final int index;
+
+    private final ServiceNode<ShardInfo> node;
+
+    private final String host;
+
+    private final int port;
+
+    private final String authority;
+
+    private final NodeStats stats;
+
+    RoutingEntry(int index, ServiceNode<ShardInfo> node, String authority, NodeStats stats) {
+        this.index = index;
+        this.node = node;
+        this.host = node.getHost();
+        this.port = node.getPort();
+        this.authority = authority;
+        this.stats = stats;
+    }
+
+    public String baseUrl(String httpScheme, String rootPathPrefix) {
+        return httpScheme + "://" + authority + rootPathPrefix;
+    }
+
+    public boolean sameAs(ServiceNode<ShardInfo> other) {
+        if (other == null || port != other.getPort() || !host.equals(other.getHost())) {
+            return false;
+        }
+        ShardInfo data = node.getNodeData();
+        return data == null ? other.getNodeData() == null : data.sameAs(other.getNodeData());
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.routing;
+
+import feign.RequestTemplate;
+
+import java.util.Collection;
+
+/**
+ * Extracts the key a request is routed by from its resolved template.
+ *
+ * @author phaneesh
+ */
+public interface RoutingKey {
+
+    /**
+     * @return the routing key of the request, or null if it has none
+     */
+    String of(RequestTemplate template);
+
+    static RoutingKey header(String name) {
+        return template -> first(template.headers().get(name));
+    }
+
+    static RoutingKey query(String name) {
+        return template -> first(template.queries().get(name));
+    }
+
+    /**
+     * Path variables are expanded by the time a request is routed, so they are addressed by the position of the path
+     * segment they fill, starting at 0 for the first segment after the leading slash.
+     */
+    static RoutingKey pathSegment(int index) {
+        return template -> {
+            String path = template.path();
+            int start = path.startsWith("/") ? 1 : 0;
+            for (int i = 0; i < index; i++) {
+                start = path.indexOf('/', start) + 1;
+                if (start == 0) {
+                    return null;
+                }
+            }
+            int end = path.indexOf('/', start);
+            String segment = end < 0 ? path.substring(start) : path.substring(start, end);
+            return segment.isEmpty() ? null : segment;
+        };
+    }
+
+    private static String first(Collection<String> values) {
+        return values == null || values.isEmpty() ? null : values.iterator().next();
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.routing;
+
+import com.flipkart.ranger.model.ServiceNode;
+import feign.ranger.common.ShardInfo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+/**
+ * Immutable snapshot of the nodes a service can be routed to. A new table is built only when the discovered node
+ * list changes, so readers can pick entries without locking or copying the node list.
+ *
+ * @author phaneesh
+ */
+public final class RoutingTable {
+
+    public static final RoutingTable EMPTY = new RoutingTable(new RoutingEntry[0], Collections.emptyList(),
+            Collections.emptyMap());
+
+    private final RoutingEntry[] entries;
+
+    private final List<ServiceNode<ShardInfo>> nodes;
+
+    private final Map<String, RoutingEntry> byAuthority;
+
+    private final ConcurrentMap<Object, Object> derived = new ConcurrentHashMap<>(4);
+
+    private RoutingTable(RoutingEntry[] entries, List<ServiceNode<ShardInfo>> nodes,
+                         Map<String, RoutingEntry> byAuthority) {
+        this.entries = entries;
+        this.nodes = nodes;
+        this.byAuthority = byAuthority;
+    }
+
+    public static RoutingTable of(List<ServiceNode<ShardInfo>> nodes) {
+        return of(nodes, EMPTY);
+    }
+
+    /**
+     * Builds a table for the given nodes. Nodes that are also present in the previous table keep their
+     * {@link NodeStats}. Nodes are considered new, for slow start, only when the previous table was not empty.
+     */
+    public static RoutingTable of(List<ServiceNode<ShardInfo>> nodes, RoutingTable previous) {
+        if (nodes == null || nodes.isEmpty()) {
+            return EMPTY;
+        }
+        RoutingEntry[] entries = new RoutingEntry[nodes.size()];
+        List<ServiceNode<ShardInfo>> copy = new ArrayList<>(nodes.size());
+        Map<String, RoutingEntry> byAuthority = new HashMap<>(nodes.size() * 2);
+        for (int i = 0; i < entries.length; i++) {
+            ServiceNode<ShardInfo> node = nodes.get(i);
+            String authority = node.getHost() + ":" + node.getPort();
+            RoutingEntry existing = previous.byAuthority.get(authority);
+            entries[i] = new RoutingEntry(i, node, authority,
+                    existing == null ? new NodeStats(previous.isEmpty()) : existing.getStats());
+            copy.add(node);
+            byAuthority.put(authority, entries[i]);
+        }
+        return new RoutingTable(entries, Collections.unmodifiableList(copy), byAuthority);
+    }
+
+    /**
+     * Merges the given tables into one, in order. Entries keep the {@link NodeStats} of the table they come from; a node
+     * present in several tables is taken from the first one.
+     */
+    public static RoutingTable merge(List<RoutingTable> tables) {
+        if (tables.size() == 1) {
+            return tables.get(0);
+        }
+        int size = 0;
+        for (RoutingTable table : tables) {
+            size += table.size();
+        }
+        if (size == 0) {
+            return EMPTY;
+        }
+        List<RoutingEntry> entries = new ArrayList<>(size);
+        List<ServiceNode<ShardInfo>> nodes = new ArrayList<>(size);
+        Map<String, RoutingEntry> byAuthority = new HashMap<>(size * 2);
+        for (RoutingTable table : tables) {
+            for (RoutingEntry source : table.entries) {
+                if (byAuthority.containsKey(source.getAuthority())) {
+                    continue;
+                }
+                RoutingEntry entry = new RoutingEntry(entries.size(), source.getNode(), source.getAuthority(),
+                        source.getStats());
+                entries.add(entry);
+                nodes.add(entry.getNode());
+                byAuthority.put(entry.getAuthority(), entry);
+            }
+        }
+        return new RoutingTable(entries.toArray(new RoutingEntry[0]), Collections.unmodifiableList(nodes),
+                byAuthority);
+    }
+
+    public int size() {
+        return entries.length;
+    }
+
+    public boolean isEmpty() {
+        return entries.length == 0;
+    }
+
+    public RoutingEntry get(int index) {
+        return entries[index];
+    }
+
+    public List<ServiceNode<ShardInfo>> nodes() {
+        return nodes;
+    }
+
+    public RoutingEntry find(String authority) {
+        return byAuthority.get(authority);
+    }
+
+    /**
+     * @return the entry whose host and port match the authority of the given absolute url, or null
+     */
+    public RoutingEntry findByUrl(String url) {
+        if (entries.length == 0) {
+            return null;
+        }
+        String authority = authorityOf(url);
+        return authority == null ? null : byAuthority.get(authority);
+    }
+
+    /**
+     * @return the host and port of the given absolute url, or null if it is not absolute
+     */
+    public static String authorityOf(String url) {
+        if (url == null) {
+            return null;
+        }
+        int start = url.indexOf("://");
+        if (start < 0) {
+            return null;
+        }
+        start += 3;
+        int end = url.length();
+        for (int i = start; i < end; i++) {
+            char c = url.charAt(i);
+            if (c == '/' || c == '?' || c == '#') {
+                end = i;
+                break;
+            }
+        }
+        return url.substring(start, end);
+    }
+
+    /**
+     * Returns state derived from this table by the given owner, computing it on first use. Selectors keep alias
+     * tables and hash rings here rather than in a field of their own, so a selector that serves more than one table
+     * (discovery and fallback pool, or several targets) builds the state once per table instead of on every switch.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T derive(Object owner, Function<RoutingTable, T> factory) {
+        Object state = derived.get(owner);
+        if (state == null) {
+            state = derived.computeIfAbsent(owner, key -> factory.apply(this));
+        }
+        return (T) state;
+    }
+
+    public RoutingEntry random() {
+        switch (entries.length) {
+            case 0:
+                return null;
+            case 1:
+                return entries[0];
+            default:
+                return entries[ThreadLocalRandom.current().nextInt(entries.length)];
+        }
+    }
+
+    /**
+     * @return true if the given node list has the same nodes, in the same order, as this table
+     */
+    public boolean hasSameNodes(List<ServiceNode<ShardInfo>> candidate) {
+        int size = candidate == null ? 0 : candidate.size();
+        if (size != entries.length) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (!entries[i].sameAs(candidate.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
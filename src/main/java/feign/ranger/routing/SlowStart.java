@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.routing;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Traffic ramp for nodes that join a service after it was first discovered. A new node's weight grows from
+ * {@code minWeight} to full over {@code durationMs}, following {@code (age / duration) ^ (1 / aggression)}: an
+ * aggression of 1 ramps linearly, higher values hand out most of the traffic early in the window.
+ *
+ * @author phaneesh
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class SlowStart {
+
+    @Builder.Default
+    private long durationMs = 30000;
+
+    @Builder.Default
+    private double minWeight = 0.1;
+
+    @Builder.Default
+    private double aggression = 1.0;
+
+    /**
+     * @return the weight, between {@code minWeight} and 1, of a node that was discovered the given time ago
+     */
+    public double weight(long ageNanos) {
+        long duration = TimeUnit.MILLISECONDS.toNanos(durationMs);
+        if (ageNanos >= duration) {
+            return 1.0;
+        }
+        double ramp = Math.max(0, ageNanos) / (double) duration;
+        if (aggression != 1.0) {
+            ramp = Math.pow(ramp, 1.0 / aggression);
+        }
+        return Math.max(minWeight, ramp);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.routing;
+
+import feign.RequestTemplate;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Applies a {@link SlowStart} ramp on top of another selector. A node picked by the delegate is accepted with a
+ * probability equal to its slow start weight, otherwise the delegate picks again. After a few rejections the node is
+ * drawn from the whole table in proportion to the weights, so that new nodes get their share even in small tables
+ * where repeated rejections are likely. Nodes past their ramp are accepted without any extra work. Sticky selectors
+ * keep returning the same node for a key, so their traffic is not ramped.
+ *
+ * @author phaneesh
+ */
+public class SlowStartNodeSelector implements NodeSelector {
+
+    private static final int MAX_ATTEMPTS = 4;
+
+    private final NodeSelector delegate;
+
+    private final SlowStart slowStart;
+
+    public SlowStartNodeSelector(NodeSelector delegate, SlowStart slowStart) {
+        this.delegate = delegate;
+        this.slowStart = slowStart;
+    }
+
+    @Override
+    public RoutingEntry select(RoutingTable table) {
+        return select(table, null);
+    }
+
+    @Override
+    public RoutingEntry select(RoutingTable table, RequestTemplate template) {
+        long now = System.nanoTime();
+        RoutingEntry entry = null;
+        for (int i = 0; i < MAX_ATTEMPTS; i++) {
+            entry = template == null ? delegate.select(table) : delegate.select(table, template);
+            if (entry == null || accept(entry, now)) {
+                return entry;
+            }
+        }
+        return template != null && delegate.isSticky() ? entry : proportional(table, now);
+    }
+
+    private RoutingEntry proportional(RoutingTable table, long now) {
+        double total = 0;
+        for (int i = 0; i < table.size(); i++) {
+            total += slowStart.weight(table.get(i).getStats().age(now));
+        }
+        double point = ThreadLocalRandom.current().nextDouble() * total;
+        for (int i = 0; i < table.size() - 1; i++) {
+            point -= slowStart.weight(table.get(i).getStats().age(now));
+            if (point < 0) {
+                return table.get(i);
+            }
+        }
+        return table.get(table.size() - 1);
+    }
+
+    private boolean accept(RoutingEntry entry, long now) {
+        double weight = slowStart.weight(entry.getStats().age(now));
+        return weight >= 1.0 || ThreadLocalRandom.current().nextDouble() < weight;
+    }
+}
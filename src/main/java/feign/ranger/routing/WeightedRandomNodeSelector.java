@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.routing;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks nodes at random in proportion to their weight. An alias table is built once per routing table and kept on
+ * the table, so a selection is two random draws over prebuilt arrays, even when one selector serves several tables.
+ * Nodes with a weight of zero are never picked unless every node has a weight of zero.
+ *
+ * @author phaneesh
+ */
+public class WeightedRandomNodeSelector implements NodeSelector {
+
+    private final NodeWeigher weigher;
+
+    public WeightedRandomNodeSelector(NodeWeigher weigher) {
+        this.weigher = weigher;
+    }
+
+    @Override
+    public RoutingEntry select(RoutingTable table) {
+        if (table.size() <= 1) {
+            return table.random();
+        }
+        AliasTable current = table.derive(this, routable -> new AliasTable(routable, weigher));
+        if (current.candidates.length == 0) {
+            return table.random();
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int slot = random.nextInt(current.candidates.length);
+        if (random.nextDouble() >= current.probabilities[slot]) {
+            slot = current.aliases[slot];
+        }
+        return table.get(current.candidates[slot]);
+    }
+
+    /**
+     * Vose's alias method over the nodes with a positive weight.
+     */
+    private static final class AliasTable {
+
+        private final int[] candidates;
+        private final double[] probabilities;
+        private final int[] aliases;
+
+        private AliasTable(RoutingTable table, NodeWeigher weigher) {
+            double[] weights = new double[table.size()];
+            int count = 0;
+            double total = 0;
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = Math.max(0, weigher.weight(table.get(i)));
+                if (weights[i] > 0) {
+                    count++;
+                    total += weights[i];
+                }
+            }
+            this.candidates = new int[count];
+            this.probabilities = new double[count];
+            this.aliases = new int[count];
+            double[] scaled = new double[count];
+            for (int i = 0, slot = 0; i < weights.length; i++) {
+                if (weights[i] > 0) {
+                    candidates[slot] = i;
+                    scaled[slot] = weights[i] * count / total;
+                    slot++;
+                }
+            }
+            int[] small = new int[count];
+            int[] large = new int[count];
+            int smallSize = 0;
+            int largeSize = 0;
+            for (int slot = 0; slot < count; slot++) {
+                if (scaled[slot] < 1) {
+                    small[smallSize++] = slot;
+                } else {
+                    large[largeSize++] = slot;
+                }
+            }
+            while (smallSize > 0 && largeSize > 0) {
+                int less = small[--smallSize];
+                int more = large[--largeSize];
+                probabilities[less] = scaled[less];
+                aliases[less] = more;
+                scaled[more] = scaled[more] + scaled[less] - 1;
+                if (scaled[more] < 1) {
+                    small[smallSize++] = more;
+                } else {
+                    large[largeSize++] = more;
+                }
+            }
+            while (largeSize > 0) {
+                probabilities[large[--largeSize]] = 1;
+            }
+            while (smallSize > 0) {
+                probabilities[small[--smallSize]] = 1;
+            }
+        }
+    }
+}
@@ -32,6 +32,10 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static org.junit.Assert.*;
 
@@ -53,6 +57,8 @@ public class FeignRangerFallbackAddressTest {
 
     private final Logger.ErrorLogger logger = new Logger.ErrorLogger();
 
+    private final List<RangerTarget<?>> targets = new ArrayList<>();
+
     @Rule
     public WireMockRule wireMockRule = new WireMockRule(9999);
 
@@ -71,6 +77,9 @@ public class FeignRangerFallbackAddressTest {
 
     @After
     public void stopTestCluster() throws Exception {
+        for (RangerTarget<?> target : targets) {
+            target.close();
+        }
         if(null != curator) {
             curator.close();
         }
@@ -80,8 +89,8 @@ public class FeignRangerFallbackAddressTest {
 
     }
 
-    @Test(expected = IllegalArgumentException.class)
-    public void testFallbackApplyCallFail() throws Exception {
+    @Test
+    public void testFallbackApplyCall() throws Exception {
         stubFor(get(urlEqualTo("/v1/test"))
                 .willReturn(aResponse()
                         .withStatus(200)
@@ -96,29 +105,76 @@ public class FeignRangerFallbackAddressTest {
                 .encoder(new JacksonEncoder())
                 .logger(logger)
                 .logLevel(Logger.Level.FULL)
-                .target(RangerTarget.<TestApi>builder().type(TestApi.class).environment("test").namespace("test").service("test").curator(curator).objectMapper(objectMapper).fallbackAddress("127.0.0.1:9999").build());
+                .target(track(RangerTarget.<TestApi>builder().type(TestApi.class).environment("test").namespace("test").service("test").curator(curator).objectMapper(objectMapper).fallbackAddress("127.0.0.1:9999").build()));
         val result = api.test();
         assertTrue(result.message.equalsIgnoreCase("test"));
     }
 
+    @Test
+    public void testFallbackPoolApplyCall() throws Exception {
+        stubFor(get(urlEqualTo("/v1/test"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(objectMapper.writeValueAsBytes(
+                                TestResponse.builder()
+                                        .message("test")
+                                        .build()
+                        ))
+                        .withHeader("Content-Type", "application/json")));
+        TestApi api = Feign.builder()
+                .decoder(new JacksonDecoder())
+                .encoder(new JacksonEncoder())
+                .target(track(RangerTarget.<TestApi>builder().type(TestApi.class).environment("test").namespace("test").service("test").curator(curator).objectMapper(objectMapper)
+                        .fallbackAddresses(Arrays.asList("127.0.0.1:9999", "localhost:9999")).build()));
+        for (int i = 0; i < 10; i++) {
+            assertTrue(api.test().message.equalsIgnoreCase("test"));
+        }
+        verify(10, getRequestedFor(urlEqualTo("/v1/test")));
+    }
+
+    @Test
+    public void testNoNodesWithoutFallbackFailsFast() throws Exception {
+        TestApi api = Feign.builder()
+                .decoder(new JacksonDecoder())
+                .encoder(new JacksonEncoder())
+                .target(track(RangerTarget.<TestApi>builder().type(TestApi.class).environment("test").namespace("test").service("test").curator(curator).objectMapper(objectMapper).build()));
+        for (int i = 0; i < 3; i++) {
+            try {
+                api.test();
+                fail("Expected no nodes to be found");
+            } catch (NoAvailableNodesException e) {
+                assertEquals("test", e.getService());
+                assertEquals(0, e.getStackTrace().length);
+            }
+        }
+    }
+
     @Test
     public void testFallbackUrlCall() throws Exception {
-        val target = RangerTarget.<TestApi>builder().type(TestApi.class).environment("test").namespace("test").service("test").curator(curator).objectMapper(objectMapper).fallbackAddress(FALLBACK_ADDRESS).build();
+        val target = track(RangerTarget.<TestApi>builder().type(TestApi.class).environment("test").namespace("test").service("test").curator(curator).objectMapper(objectMapper).fallbackAddress(FALLBACK_ADDRESS).build());
         assertEquals("http://" + FALLBACK_ADDRESS, target.url());
     }
 
     @Test
     public void testFallbackrootPathPrefixUrlCall() throws Exception {
-        val target = RangerTarget.<TestApi>builder().type(TestApi.class).environment("test").namespace("test").service("test").curator(curator).objectMapper(objectMapper).fallbackAddress(FALLBACK_ADDRESS).rootPathPrefix(ROOT_PATH_PREFIX).build();
+        val target = track(RangerTarget.<TestApi>builder().type(TestApi.class).environment("test").namespace("test").service("test").curator(curator).objectMapper(objectMapper).fallbackAddress(FALLBACK_ADDRESS).rootPathPrefix(ROOT_PATH_PREFIX).build());
         assertEquals("http://" + FALLBACK_ADDRESS + "/" + ROOT_PATH_PREFIX, target.url());
     }
 
     @Test
     public void testFallbackrootPathPrefixHttpsUrlCall() throws Exception {
-        val target = RangerTarget.<TestApi>builder().type(TestApi.class).environment("test").namespace("test").service("test").curator(curator).secured(true).objectMapper(objectMapper).fallbackAddress(FALLBACK_ADDRESS).rootPathPrefix(ROOT_PATH_PREFIX).build();
+        val target = track(RangerTarget.<TestApi>builder().type(TestApi.class).environment("test").namespace("test").service("test").curator(curator).secured(true).objectMapper(objectMapper).fallbackAddress(FALLBACK_ADDRESS).rootPathPrefix(ROOT_PATH_PREFIX).build());
         assertEquals("https://" + FALLBACK_ADDRESS + "/" + ROOT_PATH_PREFIX, target.url());
     }
 
+    /**
+     * Closes the target after the test, so that its discovery client does not outlive the test.
+     */
+    private <T> RangerTarget<T> track(RangerTarget<T> target) {
+        targets.add(target);
+        return target;
+    }
+
     @Data
     @AllArgsConstructor
     @NoArgsConstructor
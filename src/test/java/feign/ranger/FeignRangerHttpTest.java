@@ -23,10 +23,21 @@ import com.flipkart.ranger.healthcheck.HealthcheckStatus;
 import com.flipkart.ranger.serviceprovider.ServiceProvider;
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Uninterruptibles;
 import feign.*;
 import feign.jackson.JacksonDecoder;
 import feign.jackson.JacksonEncoder;
+import feign.ranger.cache.CachePolicy;
+import feign.ranger.cache.Cached;
+import feign.ranger.cache.CachingClient;
+import feign.ranger.client.DiscoveryCluster;
+import feign.ranger.client.RefreshMode;
 import feign.ranger.common.ShardInfo;
+import feign.ranger.http.JavaHttpAsyncClient;
+import feign.ranger.http.NodePoolSettings;
+import feign.ranger.http.PooledNodeClient;
+import feign.ranger.metrics.RecordingMetrics;
+import feign.ranger.routing.LeastOutstandingNodeSelector;
 import lombok.*;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.curator.framework.CuratorFramework;
@@ -38,7 +49,18 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static org.junit.Assert.*;
@@ -60,6 +82,8 @@ public class FeignRangerHttpTest {
 
     private final Logger.ErrorLogger logger = new Logger.ErrorLogger();
 
+    private final List<RangerTarget<?>> targets = new ArrayList<>();
+
     @Rule
     public WireMockRule wireMockRule = new WireMockRule(9999);
 
@@ -105,6 +129,9 @@ public class FeignRangerHttpTest {
 
     @After
     public void stopTestCluster() throws Exception {
+        for (RangerTarget<?> target : targets) {
+            target.close();
+        }
         if(null != serviceProvider ) {
             serviceProvider.stop();
         }
@@ -133,7 +160,7 @@ public class FeignRangerHttpTest {
                 .encoder(new JacksonEncoder())
                 .logger(logger)
                 .logLevel(Logger.Level.FULL)
-                .target(new RangerTarget<>(TestApi.class, "test", "test", "test", curator, false, null, objectMapper));
+                .target(track(new RangerTarget<>(TestApi.class, "test", "test", "test", curator, false, null, objectMapper)));
         val result = api.test();
         assertTrue(result.message.equalsIgnoreCase("test"));
     }
@@ -154,9 +181,425 @@ public class FeignRangerHttpTest {
                 .encoder(new JacksonEncoder())
                 .logger(logger)
                 .logLevel(Logger.Level.FULL)
-                .target(RangerTarget.<TestApi>builder().type(TestApi.class).environment("test").namespace("test").service("test").curator(curator).objectMapper(objectMapper).rootPathPrefix("apis/ks").build());
+                .target(track(RangerTarget.<TestApi>builder().type(TestApi.class).environment("test").namespace("test").service("test").curator(curator).objectMapper(objectMapper).rootPathPrefix("apis/ks").build()));
+        val result = api.test();
+        assertTrue(result.message.equalsIgnoreCase("test"));
+    }
+
+    @Test
+    public void testSuccessfulHttpCallWithWatchRefresh() throws Exception {
+        stubFor(get(urlEqualTo("/v1/test"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(objectMapper.writeValueAsBytes(
+                                TestResponse.builder()
+                                        .message("test")
+                                        .build()
+                        ))
+                        .withHeader("Content-Type", "application/json")));
+        TestApi api = Feign.builder()
+                .decoder(new JacksonDecoder())
+                .encoder(new JacksonEncoder())
+                .logger(logger)
+                .logLevel(Logger.Level.FULL)
+                .target(track(RangerTarget.<TestApi>builder().type(TestApi.class).environment("test").namespace("test").service("test").curator(curator).objectMapper(objectMapper).refreshMode(RefreshMode.WATCH).build()));
+        val result = api.test();
+        assertTrue(result.message.equalsIgnoreCase("test"));
+    }
+
+    @Test
+    public void testSuccessfulHttpCallWithAsyncStart() throws Exception {
+        stubFor(get(urlEqualTo("/v1/test"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(objectMapper.writeValueAsBytes(
+                                TestResponse.builder()
+                                        .message("test")
+                                        .build()
+                        ))
+                        .withHeader("Content-Type", "application/json")));
+        val target = track(RangerTarget.<TestApi>builder().type(TestApi.class).environment("test").namespace("test").service("test").curator(curator).objectMapper(objectMapper).refreshMode(RefreshMode.WATCH).asyncStart(true).startupWaitMs(5000).build());
+        TestApi api = Feign.builder()
+                .decoder(new JacksonDecoder())
+                .encoder(new JacksonEncoder())
+                .logger(logger)
+                .logLevel(Logger.Level.FULL)
+                .target(target);
+        val result = api.test();
+        assertTrue(result.message.equalsIgnoreCase("test"));
+        assertTrue(target.ready().isDone());
+    }
+
+    @Test
+    public void testSuccessfulAsyncHttpCall() throws Exception {
+        stubFor(get(urlEqualTo("/v1/test"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(objectMapper.writeValueAsBytes(
+                                TestResponse.builder()
+                                        .message("test")
+                                        .build()
+                        ))
+                        .withHeader("Content-Type", "application/json")));
+        val target = track(RangerTarget.<AsyncTestApi>builder().type(AsyncTestApi.class).environment("test").namespace("test").service("test").curator(curator).objectMapper(objectMapper).nodeSelector(new LeastOutstandingNodeSelector()).build());
+        AsyncTestApi api = AsyncFeign.<Object>asyncBuilder()
+                .client(target.asyncClient(new JavaHttpAsyncClient()))
+                .decoder(new JacksonDecoder())
+                .encoder(new JacksonEncoder())
+                .target(target);
+        List<CompletableFuture<TestResponse>> results = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            results.add(api.test());
+        }
+        for (CompletableFuture<TestResponse> result : results) {
+            assertTrue(result.get(10, TimeUnit.SECONDS).message.equalsIgnoreCase("test"));
+        }
+        assertEquals(0, target.entryFor(target.url()).getStats().inFlight());
+    }
+
+    @Test
+    public void testSuccessfulHttpCallWithPooledClient() throws Exception {
+        stubFor(get(urlEqualTo("/v1/test"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(objectMapper.writeValueAsBytes(
+                                TestResponse.builder()
+                                        .message("test")
+                                        .build()
+                        ))
+                        .withHeader("Content-Type", "application/json")));
+        val target = track(RangerTarget.<TestApi>builder().type(TestApi.class).environment("test").namespace("test").service("test").curator(curator).objectMapper(objectMapper).build());
+        try (PooledNodeClient pooled = target.pooledClient(NodePoolSettings.builder().warmConnections(1).build())) {
+            TestApi api = Feign.builder()
+                    .client(target.client(pooled))
+                    .decoder(new JacksonDecoder())
+                    .encoder(new JacksonEncoder())
+                    .logger(logger)
+                    .logLevel(Logger.Level.FULL)
+                    .target(target);
+            for (int i = 0; i < 5; i++) {
+                assertTrue(api.test().message.equalsIgnoreCase("test"));
+            }
+        }
+    }
+
+    @Test
+    public void testClosedPooledClientFailsWithIOException() throws Exception {
+        val target = track(RangerTarget.<TestApi>builder().type(TestApi.class).environment("test").namespace("test").service("test").curator(curator).objectMapper(objectMapper).build());
+        PooledNodeClient pooled = target.pooledClient(NodePoolSettings.builder().build());
+        pooled.close();
+        Request request = Request.create(Request.HttpMethod.GET, target.url() + "/v1/test",
+                Collections.emptyMap(), null, Util.UTF_8, null);
+        try {
+            pooled.execute(request, new Request.Options());
+            fail("Should have failed!");
+        } catch (IOException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void testMetricsAreRecorded() throws Exception {
+        stubFor(get(urlEqualTo("/v1/test"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(objectMapper.writeValueAsBytes(
+                                TestResponse.builder()
+                                        .message("test")
+                                        .build()
+                        ))
+                        .withHeader("Content-Type", "application/json")));
+        RecordingMetrics metrics = new RecordingMetrics();
+        val target = track(RangerTarget.<TestApi>builder().type(TestApi.class).environment("test").namespace("test").service("test").curator(curator).objectMapper(objectMapper).metrics(metrics).build());
+        TestApi api = Feign.builder()
+                .client(target.client(new Client.Default(null, null)))
+                .decoder(new JacksonDecoder())
+                .encoder(new JacksonEncoder())
+                .target(target);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(api.test().message.equalsIgnoreCase("test"));
+        }
+        RecordingMetrics.ServiceMetrics service = metrics.service("test");
+        assertEquals(1, service.getNodeCount());
+        assertTrue(service.getRefreshes().sum() > 0);
+        RecordingMetrics.NodeMetrics node = service.node("127.0.0.1:9999");
+        assertEquals(3, node.getSelections().sum());
+        assertEquals(3, node.getResponses().sum());
+        assertEquals(0, node.getFailures().sum());
+        assertEquals(3, node.getLatency().count());
+    }
+
+    @Test
+    public void testCachedAndCoalescedCalls() throws Exception {
+        stubFor(get(urlEqualTo("/v1/test"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(objectMapper.writeValueAsBytes(
+                                TestResponse.builder()
+                                        .message("test")
+                                        .build()
+                        ))
+                        .withHeader("Content-Type", "application/json")
+                        .withHeader("Cache-Control", "max-age=60")));
+        stubFor(get(urlEqualTo("/v1/slow"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(500)
+                        .withBody(objectMapper.writeValueAsBytes(
+                                TestResponse.builder()
+                                        .message("slow")
+                                        .build()
+                        ))
+                        .withHeader("Content-Type", "application/json")));
+        val target = track(RangerTarget.<CachedTestApi>builder().type(CachedTestApi.class).environment("test").namespace("test").service("test").curator(curator).objectMapper(objectMapper).build());
+        CachingClient client = new CachingClient(target.client(new Client.Default(null, null)),
+                CachePolicy.builder().build());
+        CachedTestApi api = Feign.builder()
+                .client(client)
+                .decoder(new JacksonDecoder())
+                .encoder(new JacksonEncoder())
+                .target(target);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(api.test().message.equalsIgnoreCase("test"));
+        }
+        verify(1, getRequestedFor(urlEqualTo("/v1/test")));
+        assertEquals(2, client.hits());
+
+        List<CompletableFuture<TestResponse>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            results.add(CompletableFuture.supplyAsync(api::slow));
+        }
+        for (CompletableFuture<TestResponse> result : results) {
+            assertTrue(result.get(10, TimeUnit.SECONDS).message.equalsIgnoreCase("slow"));
+        }
+        assertTrue(client.coalesced() > 0);
+        verify(4 - (int) client.coalesced(), getRequestedFor(urlEqualTo("/v1/slow")));
+    }
+
+    @Test
+    public void testCoalescedCallerStopsWaitingAfterReadTimeout() throws Exception {
+        stubFor(get(urlEqualTo("/v1/slow"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(objectMapper.writeValueAsBytes(
+                                TestResponse.builder()
+                                        .message("slow")
+                                        .build()
+                        ))
+                        .withHeader("Content-Type", "application/json")));
+        val target = track(RangerTarget.<CachedTestApi>builder().type(CachedTestApi.class).environment("test").namespace("test").service("test").curator(curator).objectMapper(objectMapper).build());
+        Client routed = target.client(new Client.Default(null, null));
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        Client stalling = (request, options) -> {
+            if (calls.getAndIncrement() == 0) {
+                Uninterruptibles.awaitUninterruptibly(release, 10, TimeUnit.SECONDS);
+            }
+            return routed.execute(request, options);
+        };
+        CachingClient client = new CachingClient(stalling, CachePolicy.builder().build());
+        CachedTestApi api = Feign.builder()
+                .client(client)
+                .options(new Request.Options(1, TimeUnit.SECONDS, 200, TimeUnit.MILLISECONDS, true))
+                .decoder(new JacksonDecoder())
+                .encoder(new JacksonEncoder())
+                .target(target);
+        CompletableFuture<TestResponse> leader = CompletableFuture.supplyAsync(api::slow);
+        while (calls.get() == 0) {
+            Thread.sleep(10);
+        }
+        long start = System.nanoTime();
+        assertTrue(api.slow().message.equalsIgnoreCase("slow"));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        assertEquals(0, client.coalesced());
+        release.countDown();
+        assertTrue(leader.get(10, TimeUnit.SECONDS).message.equalsIgnoreCase("slow"));
+        verify(2, getRequestedFor(urlEqualTo("/v1/slow")));
+    }
+
+    @Test
+    public void testOversizedResponsesAreNotBufferedOrShared() throws Exception {
+        stubFor(get(urlEqualTo("/v1/test"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(objectMapper.writeValueAsBytes(
+                                TestResponse.builder()
+                                        .message("test")
+                                        .build()
+                        ))
+                        .withHeader("Content-Type", "application/json")
+                        .withHeader("Cache-Control", "max-age=60")));
+        stubFor(get(urlEqualTo("/v1/slow"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(500)
+                        .withBody(objectMapper.writeValueAsBytes(
+                                TestResponse.builder()
+                                        .message("slow")
+                                        .build()
+                        ))
+                        .withHeader("Content-Type", "application/json")));
+        val target = track(RangerTarget.<CachedTestApi>builder().type(CachedTestApi.class).environment("test").namespace("test").service("test").curator(curator).objectMapper(objectMapper).build());
+        CachingClient client = new CachingClient(target.client(new Client.Default(null, null)),
+                CachePolicy.builder()
+                        .maximumEntryBytes(4)
+                        .build());
+        CachedTestApi api = Feign.builder()
+                .client(client)
+                .decoder(new JacksonDecoder())
+                .encoder(new JacksonEncoder())
+                .target(target);
+        for (int i = 0; i < 2; i++) {
+            assertTrue(api.test().message.equalsIgnoreCase("test"));
+        }
+        assertEquals(0, client.size());
+        verify(2, getRequestedFor(urlEqualTo("/v1/test")));
+
+        List<CompletableFuture<TestResponse>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            results.add(CompletableFuture.supplyAsync(api::slow));
+        }
+        for (CompletableFuture<TestResponse> result : results) {
+            assertTrue(result.get(10, TimeUnit.SECONDS).message.equalsIgnoreCase("slow"));
+        }
+        assertEquals(0, client.coalesced());
+        verify(4, getRequestedFor(urlEqualTo("/v1/slow")));
+    }
+
+    @Test
+    public void testAsyncClientSkipsRestrictedHeaders() throws Exception {
+        stubFor(get(urlEqualTo("/v1/test"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("test")));
+        JavaHttpAsyncClient client = new JavaHttpAsyncClient();
+        Map<String, Collection<String>> headers = new HashMap<>();
+        headers.put("Date", Collections.singletonList("Tue, 15 Nov 1994 08:12:31 GMT"));
+        headers.put("Via", Collections.singletonList("1.1 proxy"));
+        headers.put("X-Test", Collections.singletonList("test"));
+        Request request = Request.create(Request.HttpMethod.GET, "http://localhost:9999/v1/test", headers, null,
+                Util.UTF_8, null);
+        Response response = client.execute(request, new Request.Options(), Optional.empty()).get(10, TimeUnit.SECONDS);
+        assertEquals(200, response.status());
+        verify(getRequestedFor(urlEqualTo("/v1/test")).withHeader("X-Test", equalTo("test")));
+    }
+
+    @Test
+    public void testAsyncClientHonoursRedirectOption() throws Exception {
+        stubFor(get(urlEqualTo("/v1/moved"))
+                .willReturn(aResponse()
+                        .withStatus(302)
+                        .withHeader("Location", "/v1/test")));
+        stubFor(get(urlEqualTo("/v1/test"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("test")));
+        JavaHttpAsyncClient client = new JavaHttpAsyncClient();
+        Request request = Request.create(Request.HttpMethod.GET, "http://localhost:9999/v1/moved",
+                Collections.emptyMap(), null, Util.UTF_8, null);
+        Response redirect = client.execute(request, new Request.Options(1, TimeUnit.SECONDS, 5, TimeUnit.SECONDS, false),
+                Optional.empty()).get(10, TimeUnit.SECONDS);
+        assertEquals(302, redirect.status());
+        Response followed = client.execute(request, new Request.Options(1, TimeUnit.SECONDS, 5, TimeUnit.SECONDS, true),
+                Optional.empty()).get(10, TimeUnit.SECONDS);
+        assertEquals(200, followed.status());
+    }
+
+    @Test
+    public void testFailoverToSecondaryCluster() throws Exception {
+        stubFor(get(urlEqualTo("/v1/test"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(objectMapper.writeValueAsBytes(
+                                TestResponse.builder()
+                                        .message("test")
+                                        .build()
+                        ))
+                        .withHeader("Content-Type", "application/json")));
+        val target = track(RangerTarget.<TestApi>builder().type(TestApi.class).environment("dr").namespace("test").service("test").curator(curator).objectMapper(objectMapper)
+                .clusters(Collections.singletonList(DiscoveryCluster.builder()
+                        .environment("test")
+                        .build()))
+                .startupWaitMs(5000)
+                .build());
+        TestApi api = Feign.builder()
+                .decoder(new JacksonDecoder())
+                .encoder(new JacksonEncoder())
+                .target(target);
+        assertTrue(api.test().message.equalsIgnoreCase("test"));
+        assertNotNull(target.entryFor("http://127.0.0.1:9999/v1/test"));
+    }
+
+    @Test
+    public void testSuccessfulHttpCallWithLeastOutstandingSelection() throws Exception {
+        stubFor(get(urlEqualTo("/v1/test"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(objectMapper.writeValueAsBytes(
+                                TestResponse.builder()
+                                        .message("test")
+                                        .build()
+                        ))
+                        .withHeader("Content-Type", "application/json")));
+        val target = track(RangerTarget.<TestApi>builder().type(TestApi.class).environment("test").namespace("test").service("test").curator(curator).objectMapper(objectMapper).nodeSelector(new LeastOutstandingNodeSelector()).build());
+        TestApi api = Feign.builder()
+                .decoder(new JacksonDecoder())
+                .encoder(new JacksonEncoder())
+                .client(target.client(new Client.Default(null, null)))
+                .logger(logger)
+                .logLevel(Logger.Level.FULL)
+                .target(target);
         val result = api.test();
         assertTrue(result.message.equalsIgnoreCase("test"));
+        assertEquals(0, target.entryFor(target.url()).getStats().inFlight());
+    }
+
+    @Test
+    public void testRetryMovesToAnotherNode() throws Exception {
+        stubFor(get(urlEqualTo("/v1/test"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(objectMapper.writeValueAsBytes(
+                                TestResponse.builder()
+                                        .message("test")
+                                        .build()
+                        ))
+                        .withHeader("Content-Type", "application/json")));
+        val deadProvider = ServiceProviderBuilders.<ShardInfo>shardedServiceProviderBuilder()
+                .withCuratorFramework(curator)
+                .withNamespace("test")
+                .withServiceName("test")
+                .withSerializer(data -> {
+                    try {
+                        return objectMapper.writeValueAsBytes(data);
+                    } catch (Exception e) {
+                        log.warn("Could not parse node data", e);
+                    }
+                    return null;
+                })
+                .withHostname("127.0.0.1")
+                .withPort(9998)
+                .withNodeData(ShardInfo.builder()
+                        .environment("test")
+                        .build())
+                .withHealthcheck(() -> HealthcheckStatus.healthy)
+                .buildServiceDiscovery();
+        deadProvider.start();
+        try {
+            val target = track(RangerTarget.<TestApi>builder().type(TestApi.class).environment("test").namespace("test").service("test").curator(curator).objectMapper(objectMapper).refreshMode(RefreshMode.WATCH).build());
+            TestApi api = Feign.builder()
+                    .decoder(new JacksonDecoder())
+                    .encoder(new JacksonEncoder())
+                    .retryer(target.retryer(new Retryer.Default(1, 1, 2)))
+                    .logger(logger)
+                    .logLevel(Logger.Level.FULL)
+                    .target(target);
+            for (int i = 0; i < 20; i++) {
+                assertTrue(api.test().message.equalsIgnoreCase("test"));
+            }
+        } finally {
+            deadProvider.stop();
+        }
     }
 
     @Test
@@ -169,7 +612,7 @@ public class FeignRangerHttpTest {
                 .encoder(new JacksonEncoder())
                 .logger(logger)
                 .logLevel(Logger.Level.FULL)
-                .target(new RangerTarget<>(TestApi.class, "test", "test", "test", curator, false, null, objectMapper));
+                .target(track(new RangerTarget<>(TestApi.class, "test", "test", "test", curator, false, null, objectMapper)));
         try {
             api.test();
             fail("Should have failed!");
@@ -193,7 +636,7 @@ public class FeignRangerHttpTest {
                 .options(new Request.Options(100, 100))
                 .logger(logger)
                 .logLevel(Logger.Level.FULL)
-                .target(new RangerTarget<>(TestApi.class, "test", "test", "test", curator, false, null, objectMapper));
+                .target(track(new RangerTarget<>(TestApi.class, "test", "test", "test", curator, false, null, objectMapper)));
         try {
             api.test();
             fail("Should have failed!");
@@ -203,6 +646,14 @@ public class FeignRangerHttpTest {
     }
 
 
+    /**
+     * Closes the target after the test, so that its discovery client does not outlive the test.
+     */
+    private <T> RangerTarget<T> track(RangerTarget<T> target) {
+        targets.add(target);
+        return target;
+    }
+
     @Data
     @AllArgsConstructor
     @NoArgsConstructor
@@ -217,4 +668,21 @@ public class FeignRangerHttpTest {
         @RequestLine("GET /v1/test")
         TestResponse test();
     }
+
+    interface CachedTestApi {
+
+        @Cached
+        @RequestLine("GET /v1/test")
+        TestResponse test();
+
+        @Cached(cache = false)
+        @RequestLine("GET /v1/slow")
+        TestResponse slow();
+    }
+
+    interface AsyncTestApi {
+
+        @RequestLine("GET /v1/test")
+        CompletableFuture<TestResponse> test();
+    }
 }
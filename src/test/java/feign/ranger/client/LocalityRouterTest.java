@@ -0,0 +1,97 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.client;
+
+import com.flipkart.ranger.model.ServiceNode;
+import feign.ranger.common.ShardInfo;
+import feign.ranger.routing.RoutingTable;
+import feign.ranger.routing.RoutingTables;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Locality preference and spill over.
+ */
+public class LocalityRouterTest {
+
+    private final LocalityRouter router = new LocalityRouter(Locality.builder()
+            .region("r1")
+            .zone("z1")
+            .minHealthyPercent(50)
+            .build());
+
+    @Test
+    public void testPrefersSameZone() throws Exception {
+        RoutingTable membership = RoutingTable.of(nodes("z1", "z1", "z2", "z3"));
+        RoutingTable local = router.prefer(membership, membership);
+        assertEquals(2, local.size());
+        assertEquals("z1", local.get(0).getNode().getNodeData().getZone());
+        assertEquals("z1", local.get(1).getNode().getNodeData().getZone());
+        assertSame(membership.get(0).getStats(), local.get(0).getStats());
+    }
+
+    @Test
+    public void testSpillsOverWhenLocalNodesAreUnhealthy() throws Exception {
+        List<ServiceNode<ShardInfo>> nodes = nodes("z1", "z1", "z1", "z2");
+        RoutingTable membership = RoutingTable.of(nodes);
+        RoutingTable routable = RoutingTable.of(nodes.subList(2, 4), membership);
+        RoutingTable selected = router.prefer(membership, routable);
+        assertSame(routable, selected);
+    }
+
+    @Test
+    public void testSpillsOverWhenLocalNodesLeaveDiscovery() throws Exception {
+        String[] zones = new String[21];
+        zones[0] = "z1";
+        for (int i = 1; i < zones.length; i++) {
+            zones[i] = i <= 10 ? "z2" : "z3";
+        }
+        RoutingTable membership = RoutingTable.of(nodes(zones));
+        assertSame(membership, router.prefer(membership, membership));
+
+        RoutingTable balanced = RoutingTable.of(nodes("z1", "z1", "z2", "z2", "z3", "z3"));
+        assertEquals(2, router.prefer(balanced, balanced).size());
+    }
+
+    @Test
+    public void testFallsBackToRegion() throws Exception {
+        List<ServiceNode<ShardInfo>> nodes = nodes("z2", "z3");
+        nodes.get(0).getNodeData().setRegion("r1");
+        nodes.get(1).getNodeData().setRegion("r2");
+        RoutingTable membership = RoutingTable.of(nodes);
+        RoutingTable local = router.prefer(membership, membership);
+        assertEquals(1, local.size());
+        assertEquals("r1", local.get(0).getNode().getNodeData().getRegion());
+    }
+
+    @Test
+    public void testNodesWithoutLocalityAreUsed() throws Exception {
+        RoutingTable membership = RoutingTables.table(3);
+        assertSame(membership, router.prefer(membership, membership));
+    }
+
+    private static List<ServiceNode<ShardInfo>> nodes(String... zones) throws Exception {
+        List<ServiceNode<ShardInfo>> nodes = RoutingTables.nodes(zones.length);
+        for (int i = 0; i < zones.length; i++) {
+            nodes.get(i).getNodeData().setZone(zones[i]);
+        }
+        return nodes;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.flipkart.ranger.model.ServiceNode;
+import feign.ranger.common.ShardInfo;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryForever;
+import org.apache.curator.test.TestingCluster;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Node sources only parse payloads that changed beyond the provider heartbeat.
+ */
+public class NodeSourceTest {
+
+    private static final String NODE_PATH = "/test/127.0.0.1:9001";
+
+    private TestingCluster testingCluster;
+
+    private CuratorFramework curator;
+
+    private ScheduledExecutorService scheduler;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final AtomicInteger parsed = new AtomicInteger();
+
+    private final NodeDeserializer deserializer = new NodeDeserializer(objectMapper) {
+        @Override
+        public ServiceNode<ShardInfo> deserialize(byte[] data) {
+            parsed.incrementAndGet();
+            return super.deserialize(data);
+        }
+    };
+
+    private final ShardInfo criteria = ShardInfo.builder().environment("test").build();
+
+    @Before
+    public void startTestCluster() throws Exception {
+        testingCluster = new TestingCluster(1);
+        testingCluster.start();
+        curator = CuratorFrameworkFactory.builder()
+                .connectString(testingCluster.getConnectString())
+                .namespace("test")
+                .retryPolicy(new RetryForever(3000))
+                .build();
+        curator.start();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void stopTestCluster() throws Exception {
+        scheduler.shutdownNow();
+        if(null != curator) {
+            curator.close();
+        }
+        if(null != testingCluster) {
+            testingCluster.close();
+        }
+    }
+
+    @Test
+    public void testWatchingSourceSkipsHeartbeats() throws Exception {
+        publish("healthy", System.currentTimeMillis(), true);
+        WatchingNodeSource source = new WatchingNodeSource(curator, "test", criteria, deserializer, 100, 10);
+        source.start(scheduler, () -> {
+        });
+        try {
+            assertHeartbeatsNotParsed(source);
+        } finally {
+            source.stop();
+        }
+    }
+
+    @Test
+    public void testFinderSourceSkipsHeartbeats() throws Exception {
+        publish("healthy", System.currentTimeMillis(), true);
+        FinderNodeSource source = new FinderNodeSource(curator, "test", "test", criteria, deserializer, 100, 100);
+        source.start(scheduler, () -> {
+        });
+        try {
+            assertHeartbeatsNotParsed(source);
+        } finally {
+            source.stop();
+        }
+    }
+
+    @Test
+    public void testPayloadEqualityIgnoresTimestamp() {
+        NodePayload payload = NodePayload.of("{\"host\":\"a\",\"lastUpdatedTimeStamp\" : 12}".getBytes());
+        assertEquals(payload, NodePayload.of("{\"host\":\"a\",\"lastUpdatedTimeStamp\" : 345}".getBytes()));
+        assertNotEquals(payload, NodePayload.of("{\"host\":\"b\",\"lastUpdatedTimeStamp\" : 12}".getBytes()));
+        assertNotEquals(NodePayload.of("{\"host\":\"a\"}".getBytes()), NodePayload.of("{\"host\":\"b\"}".getBytes()));
+    }
+
+    private void assertHeartbeatsNotParsed(NodeSource source) throws Exception {
+        awaitNodes(source, 1);
+        int initial = parsed.get();
+        long heartbeat = System.currentTimeMillis() + 1000;
+        publish("healthy", heartbeat, false);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (source.nodes().get(0).getLastUpdatedTimeStamp() != heartbeat && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(heartbeat, source.nodes().get(0).getLastUpdatedTimeStamp());
+        publish("healthy", heartbeat + 1000, false);
+        Thread.sleep(500);
+        assertEquals(initial, parsed.get());
+
+        publish("unhealthy", heartbeat + 2000, false);
+        awaitNodes(source, 0);
+        assertTrue(parsed.get() > initial);
+    }
+
+    private static void awaitNodes(NodeSource source, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (source.nodes().size() != count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(count, source.nodes().size());
+    }
+
+    private void publish(String health, long timestamp, boolean create) throws Exception {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("host", "127.0.0.1");
+        node.put("port", 9001);
+        node.putObject("nodeData").put("environment", "test");
+        node.put("healthcheckStatus", health);
+        node.put("lastUpdatedTimeStamp", timestamp);
+        byte[] data = objectMapper.writeValueAsBytes(node);
+        if (create) {
+            curator.create().creatingParentsIfNeeded().forPath(NODE_PATH, data);
+        } else {
+            curator.setData().forPath(NODE_PATH, data);
+        }
+    }
+}
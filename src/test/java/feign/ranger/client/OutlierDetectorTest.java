@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.client;
+
+import feign.ranger.routing.RoutingTable;
+import org.junit.Test;
+
+import static feign.ranger.routing.RoutingTables.table;
+import static org.junit.Assert.*;
+
+/**
+ * Outlier detection thresholds and ejection caps.
+ */
+public class OutlierDetectorTest {
+
+    @Test
+    public void testConsecutiveFailuresEjectUpToCap() throws Exception {
+        RoutingTable table = table(4);
+        OutlierDetector detector = new OutlierDetector("test", OutlierDetection.builder()
+                .consecutiveFailures(3)
+                .maxEjectionPercent(50)
+                .build());
+        for (int node = 0; node < 3; node++) {
+            for (int i = 0; i < 3; i++) {
+                detector.onFailure(table.get(node), table);
+            }
+        }
+        assertTrue(table.get(0).getStats().isEjected());
+        assertTrue(table.get(1).getStats().isEjected());
+        assertFalse(table.get(2).getStats().isEjected());
+    }
+
+    @Test
+    public void testSuccessResetsConsecutiveFailures() throws Exception {
+        RoutingTable table = table(2);
+        OutlierDetector detector = new OutlierDetector("test", OutlierDetection.builder()
+                .consecutiveFailures(2)
+                .build());
+        detector.onFailure(table.get(0), table);
+        table.get(0).getStats().recordSuccess();
+        assertFalse(detector.onFailure(table.get(0), table));
+        assertTrue(detector.onFailure(table.get(0), table));
+    }
+
+    @Test
+    public void testErrorRateEjectionAndRestore() throws Exception {
+        RoutingTable table = table(2);
+        OutlierDetector detector = new OutlierDetector("test", OutlierDetection.builder()
+                .consecutiveFailures(Integer.MAX_VALUE)
+                .minimumRequests(10)
+                .errorRateThreshold(0.5)
+                .baseEjectionTimeMs(0)
+                .build());
+        for (int i = 0; i < 10; i++) {
+            if (i % 2 == 0) {
+                detector.onFailure(table.get(0), table);
+            } else {
+                table.get(0).getStats().recordSuccess();
+            }
+        }
+        assertTrue(detector.sweep(table));
+        assertTrue(table.get(0).getStats().isEjected());
+        assertTrue(detector.sweep(table));
+        assertFalse(table.get(0).getStats().isEjected());
+    }
+}
@@ -0,0 +1,384 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flipkart.ranger.ServiceProviderBuilders;
+import com.flipkart.ranger.healthcheck.Healthcheck;
+import com.flipkart.ranger.healthcheck.HealthcheckStatus;
+import com.flipkart.ranger.serviceprovider.ServiceProvider;
+import feign.ranger.common.ShardInfo;
+import feign.ranger.metrics.RecordingMetrics;
+import feign.ranger.routing.RoutingEntry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryForever;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingCluster;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Discovery client behaviour against an in-process zookeeper.
+ */
+@Slf4j
+public class ServiceDiscoveryClientTest {
+
+    private TestingCluster testingCluster;
+
+    private CuratorFramework curator;
+
+    private final List<ServiceProvider<ShardInfo>> serviceProviders = new ArrayList<>();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void startTestCluster() throws Exception {
+        testingCluster = new TestingCluster(1);
+        testingCluster.start();
+        curator = CuratorFrameworkFactory.builder()
+                .connectString(testingCluster.getConnectString())
+                .namespace("test")
+                .retryPolicy(new RetryForever(3000))
+                .build();
+        curator.start();
+        startProvider(9001);
+    }
+
+    @After
+    public void stopTestCluster() throws Exception {
+        for (ServiceProvider<ShardInfo> serviceProvider : serviceProviders) {
+            serviceProvider.stop();
+        }
+        if(null != curator) {
+            curator.close();
+        }
+        if(null != testingCluster) {
+            testingCluster.close();
+        }
+    }
+
+    @Test
+    public void testWatchRefreshEmitsDeltas() throws Exception {
+        ServiceDiscoveryClient client = ServiceDiscoveryClient.builder()
+                .curator(curator)
+                .namespace("test")
+                .serviceName("test")
+                .environment("test")
+                .objectMapper(objectMapper)
+                .refreshMode(RefreshMode.WATCH)
+                .build();
+        List<NodeDelta> deltas = new CopyOnWriteArrayList<>();
+        client.addListener(deltas::add);
+        client.start();
+        try {
+            assertEquals(1, client.getAllNodes().size());
+            startProvider(9002);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (deltas.isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertFalse(deltas.isEmpty());
+            NodeDelta delta = deltas.get(0);
+            assertEquals(1, delta.getAdded().size());
+            assertEquals(9002, delta.getAdded().get(0).getPort());
+            assertTrue(delta.getRemoved().isEmpty());
+            assertEquals(2, client.getAllNodes().size());
+        } finally {
+            client.stop();
+        }
+    }
+
+    @Test
+    public void testWatchDropsNodeThatTurnsUnhealthy() throws Exception {
+        AtomicReference<HealthcheckStatus> status = new AtomicReference<>(HealthcheckStatus.healthy);
+        startProvider(curator, 9002, status::get);
+        ServiceDiscoveryClient client = ServiceDiscoveryClient.builder()
+                .curator(curator)
+                .namespace("test")
+                .serviceName("test")
+                .environment("test")
+                .objectMapper(objectMapper)
+                .refreshMode(RefreshMode.WATCH)
+                .build();
+        client.start();
+        try {
+            assertEquals(2, client.getAllNodes().size());
+            status.set(HealthcheckStatus.unhealthy);
+            long deadline = System.currentTimeMillis() + 8000;
+            while (client.getAllNodes().size() != 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, client.getAllNodes().size());
+            assertEquals(9001, client.getAllNodes().get(0).getPort());
+        } finally {
+            client.stop();
+        }
+    }
+
+    @Test
+    public void testNodeMetricsDroppedWhenNodeLeaves() throws Exception {
+        RecordingMetrics metrics = new RecordingMetrics();
+        ServiceDiscoveryClient client = ServiceDiscoveryClient.builder()
+                .curator(curator)
+                .namespace("test")
+                .serviceName("test")
+                .environment("test")
+                .objectMapper(objectMapper)
+                .refreshMode(RefreshMode.WATCH)
+                .metrics(metrics)
+                .build();
+        client.start();
+        try {
+            RoutingEntry removed = client.routingTable().get(0);
+            metrics.onSelection("test", removed);
+            assertTrue(metrics.service("test").nodes().containsKey("127.0.0.1:9001"));
+            startProvider(9002);
+            serviceProviders.get(0).stop();
+            serviceProviders.remove(0);
+            long deadline = System.currentTimeMillis() + 10000;
+            while (client.getAllNodes().get(0).getPort() != 9002 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, client.getAllNodes().size());
+            assertFalse(metrics.service("test").nodes().containsKey("127.0.0.1:9001"));
+            // A request that was still in flight to the removed node reports late
+            metrics.onResponse("test", removed, 1000, true);
+            assertFalse(metrics.service("test").nodes().containsKey("127.0.0.1:9001"));
+        } finally {
+            client.stop();
+        }
+    }
+
+    @Test
+    public void testSnapshotUsedWhileZookeeperIsUnreachable() throws Exception {
+        Path snapshotPath = folder.getRoot().toPath().resolve("test.json");
+        ServiceDiscoveryClient client = snapshotClient(curator, snapshotPath);
+        client.start();
+        client.stop();
+        assertTrue(Files.exists(snapshotPath));
+
+        TestingCluster unreachable = new TestingCluster(1);
+        CuratorFramework unreachableCurator = CuratorFrameworkFactory.builder()
+                .connectString(unreachable.getConnectString())
+                .namespace("test")
+                .connectionTimeoutMs(500)
+                .retryPolicy(new RetryOneTime(100))
+                .build();
+        unreachableCurator.start();
+        ServiceDiscoveryClient restarted = snapshotClient(unreachableCurator, snapshotPath);
+        try {
+            restarted.startAsync();
+            assertEquals(1, restarted.getAllNodes().size());
+            assertEquals(9001, restarted.getAllNodes().get(0).getPort());
+            Thread.sleep(1500);
+            assertEquals(1, restarted.getAllNodes().size());
+        } finally {
+            restarted.stop();
+            unreachableCurator.close();
+            unreachable.close();
+        }
+    }
+
+    @Test
+    public void testSnapshotDroppedWhenServiceHasNoNodes() throws Exception {
+        Path snapshotPath = folder.getRoot().toPath().resolve("test.json");
+        ServiceDiscoveryClient client = snapshotClient(curator, snapshotPath);
+        client.start();
+        client.stop();
+        assertTrue(Files.exists(snapshotPath));
+
+        for (ServiceProvider<ShardInfo> serviceProvider : serviceProviders) {
+            serviceProvider.stop();
+        }
+        serviceProviders.clear();
+        ServiceDiscoveryClient restarted = snapshotClient(curator, snapshotPath);
+        restarted.start();
+        try {
+            assertTrue(restarted.getAllNodes().isEmpty());
+            startProvider(9002);
+            long deadline = System.currentTimeMillis() + 10000;
+            while (restarted.getAllNodes().isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, restarted.getAllNodes().size());
+            assertEquals(9002, restarted.getAllNodes().get(0).getPort());
+        } finally {
+            restarted.stop();
+        }
+    }
+
+    private ServiceDiscoveryClient snapshotClient(CuratorFramework curator, Path snapshotPath) throws Exception {
+        return ServiceDiscoveryClient.builder()
+                .curator(curator)
+                .namespace("test")
+                .serviceName("test")
+                .environment("test")
+                .objectMapper(objectMapper)
+                .refreshMode(RefreshMode.WATCH)
+                .snapshotPath(snapshotPath)
+                .build();
+    }
+
+    @Test
+    public void testAsyncStartRetriesUntilZookeeperIsReachable() throws Exception {
+        TestingCluster lateCluster = new TestingCluster(1);
+        CuratorFramework lateCurator = CuratorFrameworkFactory.builder()
+                .connectString(lateCluster.getConnectString())
+                .namespace("test")
+                .connectionTimeoutMs(500)
+                .retryPolicy(new RetryOneTime(100))
+                .build();
+        lateCurator.start();
+        ServiceDiscoveryClient client = ServiceDiscoveryClient.builder()
+                .curator(lateCurator)
+                .namespace("test")
+                .serviceName("test")
+                .environment("test")
+                .objectMapper(objectMapper)
+                .refreshMode(RefreshMode.WATCH)
+                .nodeRefreshIntervalMs(200)
+                .build();
+        try {
+            CompletableFuture<Void> ready = client.startAsync();
+            Thread.sleep(1500);
+            assertFalse(ready.isDone());
+            lateCluster.start();
+            assertTrue(lateCurator.blockUntilConnected(10, TimeUnit.SECONDS));
+            startProvider(lateCurator, 9005);
+            ready.get(30, TimeUnit.SECONDS);
+            assertEquals(9005, client.getAllNodes().get(0).getPort());
+        } finally {
+            client.stop();
+            lateCurator.close();
+            lateCluster.close();
+        }
+    }
+
+    @Test
+    public void testRegistrySharesClientUntilLastRelease() throws Exception {
+        DiscoveryClientRegistry registry = DiscoveryClientRegistry.getInstance();
+        DiscoveryClientRegistry.Key key = DiscoveryClientRegistry.Key.builder()
+                .curator(curator)
+                .namespace("test")
+                .service("test")
+                .environment("test")
+                .objectMapper(objectMapper)
+                .build();
+        DiscoveryClientRegistry.ClientFactory factory = () -> ServiceDiscoveryClient.builder()
+                .curator(curator)
+                .namespace("test")
+                .serviceName("test")
+                .environment("test")
+                .objectMapper(objectMapper)
+                .build();
+        ServiceDiscoveryClient first = registry.acquire(key, factory);
+        ServiceDiscoveryClient second = registry.acquire(key, factory);
+        assertSame(first, second);
+        assertEquals(2, registry.references(key));
+        registry.release(key, first);
+        assertEquals(1, registry.references(key));
+        registry.release(key, second);
+        assertEquals(0, registry.references(key));
+        ServiceDiscoveryClient third = registry.acquire(key, factory);
+        assertNotSame(first, third);
+        registry.release(key, third);
+
+        ObjectMapper otherMapper = new ObjectMapper();
+        DiscoveryClientRegistry.Key otherKey = DiscoveryClientRegistry.Key.builder()
+                .curator(curator)
+                .namespace("test")
+                .service("test")
+                .environment("test")
+                .objectMapper(otherMapper)
+                .build();
+        assertNotEquals(key, otherKey);
+        ServiceDiscoveryClient fourth = registry.acquire(key, factory);
+        ServiceDiscoveryClient fifth = registry.acquire(otherKey, factory);
+        assertNotSame(fourth, fifth);
+        registry.release(key, fourth);
+        registry.release(otherKey, fifth);
+    }
+
+    @Test
+    public void testPollingRefresh() throws Exception {
+        ServiceDiscoveryClient client = ServiceDiscoveryClient.builder()
+                .curator(curator)
+                .namespace("test")
+                .serviceName("test")
+                .environment("test")
+                .objectMapper(objectMapper)
+                .build();
+        client.start();
+        try {
+            assertTrue(client.getNode().isPresent());
+            assertEquals(9001, client.getNode().get().getPort());
+        } finally {
+            client.stop();
+        }
+    }
+
+    private void startProvider(int port) throws Exception {
+        startProvider(curator, port);
+    }
+
+    private void startProvider(CuratorFramework curator, int port) throws Exception {
+        startProvider(curator, port, () -> HealthcheckStatus.healthy);
+    }
+
+    private void startProvider(CuratorFramework curator, int port, Healthcheck healthcheck) throws Exception {
+        ServiceProvider<ShardInfo> serviceProvider = ServiceProviderBuilders.<ShardInfo>shardedServiceProviderBuilder()
+                .withCuratorFramework(curator)
+                .withNamespace("test")
+                .withServiceName("test")
+                .withSerializer(data -> {
+                    try {
+                        return objectMapper.writeValueAsBytes(data);
+                    } catch (Exception e) {
+                        log.warn("Could not parse node data", e);
+                    }
+                    return null;
+                })
+                .withHostname("127.0.0.1")
+                .withPort(port)
+                .withNodeData(ShardInfo.builder()
+                        .environment("test")
+                        .build())
+                .withHealthcheck(healthcheck)
+                .buildServiceDiscovery();
+        serviceProvider.start();
+        serviceProviders.add(serviceProvider);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.common;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Percentiles reported by the latency histogram, in particular around bucket edges.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testExactBelowSubBucketCount() {
+        for (long micros = 0; micros < 16; micros++) {
+            assertEquals(micros, percentileMicros(1.0, micros));
+        }
+    }
+
+    @Test
+    public void testBucketEdges() {
+        // From 16us buckets are 2us wide, from 32us 4us wide, and so on
+        assertEquals(17, percentileMicros(1.0, 16));
+        assertEquals(17, percentileMicros(1.0, 17));
+        assertEquals(19, percentileMicros(1.0, 18));
+        assertEquals(31, percentileMicros(1.0, 31));
+        assertEquals(35, percentileMicros(1.0, 32));
+        assertEquals(35, percentileMicros(1.0, 35));
+        assertEquals(39, percentileMicros(1.0, 36));
+        assertEquals(1023, percentileMicros(1.0, 1023));
+        assertEquals(1151, percentileMicros(1.0, 1024));
+    }
+
+    @Test
+    public void testUpperBoundWithinOneEighth() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            long micros = 1 + (long) Math.pow(10, random.nextDouble() * 8);
+            long reported = percentileMicros(1.0, micros);
+            assertTrue(reported >= micros);
+            assertTrue(reported <= micros + micros / 8);
+        }
+    }
+
+    @Test
+    public void testPercentileRanks() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentileNanos(0.5));
+        for (long micros = 1; micros <= 100; micros++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+        }
+        assertEquals(100, histogram.count());
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(1), histogram.percentileNanos(0));
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(51), histogram.percentileNanos(0.5));
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(103), histogram.percentileNanos(0.99));
+        histogram.reset();
+        assertEquals(0, histogram.count());
+    }
+
+    private static long percentileMicros(double percentile, long recordedMicros) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(recordedMicros));
+        return TimeUnit.NANOSECONDS.toMicros(histogram.percentileNanos(percentile));
+    }
+}
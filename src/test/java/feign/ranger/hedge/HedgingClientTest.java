@@ -0,0 +1,242 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.hedge;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flipkart.ranger.ServiceProviderBuilders;
+import com.flipkart.ranger.healthcheck.HealthcheckStatus;
+import com.flipkart.ranger.serviceprovider.ServiceProvider;
+import com.google.common.util.concurrent.Uninterruptibles;
+import feign.Client;
+import feign.Feign;
+import feign.RequestLine;
+import feign.Response;
+import feign.Util;
+import feign.ranger.RangerTarget;
+import feign.ranger.common.ShardInfo;
+import feign.ranger.routing.RoutingTable;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryForever;
+import org.apache.curator.test.TestingCluster;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Hedging against two discovered nodes, with a scripted delegate client in place of the network.
+ */
+@Slf4j
+public class HedgingClientTest {
+
+    private TestingCluster testingCluster;
+
+    private CuratorFramework curator;
+
+    private final List<ServiceProvider<ShardInfo>> serviceProviders = new ArrayList<>();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private RangerTarget<HedgedApi> target;
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private final List<String> urls = new CopyOnWriteArrayList<>();
+
+    private final List<Thread> callers = new CopyOnWriteArrayList<>();
+
+    private volatile int slowCall = -1;
+
+    private final AtomicBoolean slowResponseClosed = new AtomicBoolean();
+
+    /**
+     * Answers "fast" right away, except for the call numbered {@link #slowCall}, which answers "slow" after 500ms and
+     * cannot be interrupted.
+     */
+    private final Client scripted = (request, options) -> {
+        int call = calls.getAndIncrement();
+        urls.add(request.url());
+        callers.add(Thread.currentThread());
+        boolean slow = call == slowCall;
+        if (slow) {
+            Uninterruptibles.sleepUninterruptibly(500, TimeUnit.MILLISECONDS);
+        }
+        byte[] body = (slow ? "slow" : "fast").getBytes(Util.UTF_8);
+        return Response.builder()
+                .status(200)
+                .reason("OK")
+                .headers(Collections.emptyMap())
+                .request(request)
+                .body(new ByteArrayInputStream(body) {
+                    @Override
+                    public void close() {
+                        if (slow) {
+                            slowResponseClosed.set(true);
+                        }
+                    }
+                }, body.length)
+                .build();
+    };
+
+    @Before
+    public void startTestCluster() throws Exception {
+        testingCluster = new TestingCluster(1);
+        testingCluster.start();
+        curator = CuratorFrameworkFactory.builder()
+                .connectString(testingCluster.getConnectString())
+                .namespace("test")
+                .retryPolicy(new RetryForever(3000))
+                .build();
+        curator.start();
+        startProvider(7001);
+        startProvider(7002);
+        target = RangerTarget.<HedgedApi>builder().type(HedgedApi.class).environment("test").namespace("test").service("test").curator(curator).objectMapper(objectMapper).build();
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((target.entryFor("http://127.0.0.1:7001/") == null || target.entryFor("http://127.0.0.1:7002/") == null)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @After
+    public void stopTestCluster() throws Exception {
+        if (null != target) {
+            target.close();
+        }
+        for (ServiceProvider<ShardInfo> serviceProvider : serviceProviders) {
+            serviceProvider.stop();
+        }
+        if(null != curator) {
+            curator.close();
+        }
+        if(null != testingCluster) {
+            testingCluster.close();
+        }
+    }
+
+    @Test
+    public void testHedgeToAnotherNodeWinsAndLoserIsClosed() throws Exception {
+        try (HedgingClient client = new HedgingClient(target, scripted, policy(1.0))) {
+            HedgedApi api = Feign.builder().client(client).target(target);
+            assertEquals("fast", api.hedged());
+            slowCall = 1;
+            long start = System.nanoTime();
+            assertEquals("fast", api.hedged());
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(400));
+            assertEquals(3, calls.get());
+            assertNotEquals(RoutingTable.authorityOf(urls.get(1)), RoutingTable.authorityOf(urls.get(2)));
+            long deadline = System.currentTimeMillis() + 2000;
+            while (!slowResponseClosed.get() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(slowResponseClosed.get());
+        }
+    }
+
+    @Test
+    public void testRunsOnCallingThreadUntilDelayIsKnown() throws Exception {
+        try (HedgingClient client = new HedgingClient(target, scripted, policy(1.0))) {
+            HedgedApi api = Feign.builder().client(client).target(target);
+            assertEquals("fast", api.hedged());
+            assertSame(Thread.currentThread(), callers.get(0));
+            assertEquals("fast", api.hedged());
+            assertNotSame(Thread.currentThread(), callers.get(1));
+        }
+    }
+
+    @Test
+    public void testNoHedgeBeyondBudget() throws Exception {
+        try (HedgingClient client = new HedgingClient(target, scripted, policy(0))) {
+            HedgedApi api = Feign.builder().client(client).target(target);
+            assertEquals("fast", api.hedged());
+            slowCall = 1;
+            assertEquals("slow", api.hedged());
+            assertEquals(2, calls.get());
+        }
+    }
+
+    @Test
+    public void testMethodsNotOptedInPassThrough() throws Exception {
+        try (HedgingClient client = new HedgingClient(target, scripted, policy(1.0))) {
+            HedgedApi api = Feign.builder().client(client).target(target);
+            assertEquals("fast", api.plain());
+            slowCall = 1;
+            assertEquals("slow", api.plain());
+            assertEquals(2, calls.get());
+            assertEquals(Collections.nCopies(2, Thread.currentThread()), callers);
+        }
+    }
+
+    /**
+     * Hedges after 50ms once a single sample has been recorded.
+     */
+    private static HedgingPolicy policy(double maxHedgeRatio) {
+        return HedgingPolicy.builder()
+                .percentile(0.5)
+                .windowMs(0)
+                .minimumSamples(1)
+                .minimumDelayMs(50)
+                .maxHedgeRatio(maxHedgeRatio)
+                .build();
+    }
+
+    private void startProvider(int port) throws Exception {
+        ServiceProvider<ShardInfo> serviceProvider = ServiceProviderBuilders.<ShardInfo>shardedServiceProviderBuilder()
+                .withCuratorFramework(curator)
+                .withNamespace("test")
+                .withServiceName("test")
+                .withSerializer(data -> {
+                    try {
+                        return objectMapper.writeValueAsBytes(data);
+                    } catch (Exception e) {
+                        log.warn("Could not parse node data", e);
+                    }
+                    return null;
+                })
+                .withHostname("127.0.0.1")
+                .withPort(port)
+                .withNodeData(ShardInfo.builder()
+                        .environment("test")
+                        .build())
+                .withHealthcheck(() -> HealthcheckStatus.healthy)
+                .buildServiceDiscovery();
+        serviceProvider.start();
+        serviceProviders.add(serviceProvider);
+    }
+
+    interface HedgedApi {
+
+        @Hedged
+        @RequestLine("GET /v1/test")
+        String hedged();
+
+        @RequestLine("GET /v1/plain")
+        String plain();
+    }
+}
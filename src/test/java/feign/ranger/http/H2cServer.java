@@ -0,0 +1,179 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal h2c server for tests: accepts HTTP/1.1 upgrades to HTTP/2 and answers every request with a fixed body. It
+ * speaks just enough of HTTP/2 for the JDK client and counts the connections it accepts.
+ */
+class H2cServer implements Closeable {
+
+    private static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int DATA = 0x0;
+    private static final int HEADERS = 0x1;
+    private static final int SETTINGS = 0x4;
+    private static final int PING = 0x6;
+    private static final int GOAWAY = 0x7;
+
+    private static final int END_STREAM = 0x1;
+    private static final int ACK = 0x1;
+    private static final int END_HEADERS = 0x4;
+
+    /**
+     * The last four bytes of a request head, {@code \r\n\r\n}.
+     */
+    private static final int END_OF_HEAD = 0x0d0a0d0a;
+
+    /**
+     * HPACK indexed header field 8 of the static table, {@code :status 200}.
+     */
+    private static final byte STATUS_200 = (byte) 0x88;
+
+    private final ServerSocket serverSocket;
+
+    private final byte[] body;
+
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+
+    H2cServer(String body) throws IOException {
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        this.body = body.getBytes(StandardCharsets.UTF_8);
+        Thread acceptor = new Thread(this::accept, "h2c-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return the number of connections accepted so far
+     */
+    int connections() {
+        return connections.get();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.incrementAndGet();
+                sockets.add(socket);
+                Thread handler = new Thread(() -> serve(socket), "h2c-connection");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket connection = socket) {
+            DataInputStream in = new DataInputStream(connection.getInputStream());
+            OutputStream out = connection.getOutputStream();
+            String head = readHead(in);
+            if (!head.toLowerCase().contains("upgrade: h2c")) {
+                out.write(("HTTP/1.1 505 HTTP Version Not Supported\r\nContent-Length: 0\r\nConnection: close\r\n\r\n")
+                        .getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+                return;
+            }
+            out.write("HTTP/1.1 101 Switching Protocols\r\nConnection: Upgrade\r\nUpgrade: h2c\r\n\r\n"
+                    .getBytes(StandardCharsets.US_ASCII));
+            writeFrame(out, SETTINGS, 0, 0, new byte[0]);
+            byte[] preface = new byte[PREFACE.length];
+            in.readFully(preface);
+            // The upgraded request is stream 1
+            respond(out, 1);
+            while (true) {
+                int length = (in.readUnsignedByte() << 16) | (in.readUnsignedByte() << 8) | in.readUnsignedByte();
+                int type = in.readUnsignedByte();
+                int flags = in.readUnsignedByte();
+                int stream = in.readInt() & 0x7fffffff;
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                if (type == SETTINGS && (flags & ACK) == 0) {
+                    writeFrame(out, SETTINGS, ACK, 0, new byte[0]);
+                } else if (type == PING && (flags & ACK) == 0) {
+                    writeFrame(out, PING, ACK, 0, payload);
+                } else if ((type == HEADERS || type == DATA) && (flags & END_STREAM) != 0) {
+                    respond(out, stream);
+                } else if (type == GOAWAY) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // Connection closed by the client or the server
+        }
+    }
+
+    private void respond(OutputStream out, int stream) throws IOException {
+        writeFrame(out, HEADERS, END_HEADERS, stream, new byte[]{STATUS_200});
+        writeFrame(out, DATA, END_STREAM, stream, body);
+    }
+
+    private synchronized void writeFrame(OutputStream out, int type, int flags, int stream, byte[] payload)
+            throws IOException {
+        out.write(new byte[]{
+                (byte) (payload.length >>> 16), (byte) (payload.length >>> 8), (byte) payload.length,
+                (byte) type, (byte) flags,
+                (byte) (stream >>> 24), (byte) (stream >>> 16), (byte) (stream >>> 8), (byte) stream});
+        out.write(payload);
+        out.flush();
+    }
+
+    private static String readHead(InputStream in) throws IOException {
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        int last = 0;
+        while (last != END_OF_HEAD) {
+            int b = in.read();
+            if (b == -1) {
+                throw new IOException("Connection closed before the request head");
+            }
+            head.write(b);
+            last = (last << 8) | b;
+        }
+        return head.toString(StandardCharsets.US_ASCII.name());
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+    }
+}
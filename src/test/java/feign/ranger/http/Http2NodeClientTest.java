@@ -0,0 +1,125 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.http;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import feign.Request;
+import feign.Response;
+import feign.Util;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.*;
+
+/**
+ * HTTP/2 client against a local server that only speaks HTTP/1.1 and one that accepts h2c upgrades.
+ */
+public class Http2NodeClientTest {
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(9997);
+
+    @Test
+    public void testFallsBackToHttp1PerNode() throws Exception {
+        stubFor(post(urlEqualTo("/v1/test"))
+                .withRequestBody(equalTo("ping"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "text/plain")
+                        .withBody("pong")));
+        stubFor(get(urlEqualTo("/v1/test"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "text/plain")
+                        .withBody("pong")));
+        Http2NodeClient client = new Http2NodeClient(null);
+        Request.Options options = new Request.Options(1, TimeUnit.SECONDS, 5, TimeUnit.SECONDS, true);
+        assertEquals("pong", call(client, Request.HttpMethod.POST, "ping".getBytes(StandardCharsets.UTF_8), options));
+        assertEquals(HttpClient.Version.HTTP_2, client.protocol("localhost:9997"));
+        for (int i = 0; i < 3; i++) {
+            assertEquals("pong", call(client, Request.HttpMethod.GET, null, options));
+            assertEquals(HttpClient.Version.HTTP_1_1, client.protocol("localhost:9997"));
+        }
+        assertEquals("pong", call(client, Request.HttpMethod.POST, "ping".getBytes(StandardCharsets.UTF_8), options));
+        client.close();
+    }
+
+    @Test
+    public void testInvalidRequestFailsWithIOException() throws Exception {
+        Http2NodeClient client = new Http2NodeClient(null);
+        Request request = Request.create(Request.HttpMethod.GET, "http://localhost:9997/v1/test?q=a b",
+                Collections.emptyMap(), null, StandardCharsets.UTF_8, null);
+        try {
+            client.execute(request, new Request.Options());
+            fail("Should have failed!");
+        } catch (IOException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void testMultiplexesRequestsOverOneConnection() throws Exception {
+        Http2NodeClient client = new Http2NodeClient(null);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try (H2cServer server = new H2cServer("pong")) {
+            String url = "http://localhost:" + server.port() + "/v1/test";
+            Request.Options options = new Request.Options(1, TimeUnit.SECONDS, 5, TimeUnit.SECONDS, true);
+            assertEquals("pong", call(client, url, Request.HttpMethod.GET, null, options));
+            assertEquals(HttpClient.Version.HTTP_2, client.protocol("localhost:" + server.port()));
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                results.add(executor.submit(() -> call(client, url, Request.HttpMethod.GET, null, options)));
+            }
+            for (Future<String> result : results) {
+                assertEquals("pong", result.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(HttpClient.Version.HTTP_2, client.protocol("localhost:" + server.port()));
+            assertEquals(1, server.connections());
+        } finally {
+            executor.shutdownNow();
+            client.close();
+        }
+    }
+
+    private static String call(Http2NodeClient client, Request.HttpMethod method, byte[] body,
+                               Request.Options options) throws Exception {
+        return call(client, "http://localhost:9997/v1/test", method, body, options);
+    }
+
+    private static String call(Http2NodeClient client, String url, Request.HttpMethod method, byte[] body,
+                               Request.Options options) throws Exception {
+        Request request = Request.create(method, url, Collections.emptyMap(), body, StandardCharsets.UTF_8, null);
+        try (Response response = client.execute(request, options)) {
+            assertEquals(200, response.status());
+            return Util.toString(response.body().asReader(StandardCharsets.UTF_8));
+        }
+    }
+}
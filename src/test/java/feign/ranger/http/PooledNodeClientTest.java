@@ -0,0 +1,174 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.http;
+
+import com.flipkart.ranger.model.ServiceNode;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import feign.Request;
+import feign.Response;
+import feign.Util;
+import feign.ranger.client.NodeDelta;
+import feign.ranger.client.NodeDiscovery;
+import feign.ranger.client.NodeListener;
+import feign.ranger.common.ShardInfo;
+import feign.ranger.routing.RoutingEntry;
+import feign.ranger.routing.RoutingTable;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.*;
+
+/**
+ * Per node connection pools following node changes, with discovery replaced by deltas handed to the client.
+ */
+public class PooledNodeClientTest {
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(9996);
+
+    private final NodeDiscovery discovery = new NodeDiscovery() {
+
+        @Override
+        public RoutingTable routingTable() {
+            return RoutingTable.EMPTY;
+        }
+
+        @Override
+        public RoutingTable membership() {
+            return RoutingTable.EMPTY;
+        }
+
+        @Override
+        public CompletableFuture<Void> ready() {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public void reportResult(RoutingEntry entry, boolean success) {
+        }
+
+        @Override
+        public void subscribe(NodeListener listener) {
+        }
+
+        @Override
+        public void removeListener(NodeListener listener) {
+        }
+    };
+
+    @Test
+    public void testWarmsConnectionsToAddedNode() throws Exception {
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(5000);
+            PooledNodeClient client = new PooledNodeClient(discovery, "http", settings(2));
+            try {
+                client.onChange(added(node(server.getLocalPort())));
+                try (Socket first = server.accept(); Socket second = server.accept()) {
+                    assertTrue(first.isConnected() && second.isConnected());
+                }
+            } finally {
+                client.close();
+            }
+        }
+    }
+
+    @Test
+    public void testClosesConnectionsToRemovedNode() throws Exception {
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(5000);
+            ServiceNode<ShardInfo> node = node(server.getLocalPort());
+            PooledNodeClient client = new PooledNodeClient(discovery, "http", settings(1));
+            try {
+                client.onChange(added(node));
+                try (Socket warmed = server.accept()) {
+                    warmed.setSoTimeout(5000);
+                    client.onChange(removed(node));
+                    assertEquals(-1, warmed.getInputStream().read());
+                }
+            } finally {
+                client.close();
+            }
+        }
+    }
+
+    @Test
+    public void testRetriesOnSharedPoolWhenNodePoolClosesMidRequest() throws Exception {
+        stubFor(get(urlEqualTo("/v1/test"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "text/plain")
+                        .withBody("pong")));
+        ServiceNode<ShardInfo> node = node(9996);
+        AtomicBoolean left = new AtomicBoolean();
+        PooledNodeClient client = new PooledNodeClient(discovery, "http", settings(0)) {
+            @Override
+            NodePool pool(String url) {
+                NodePool pool = super.pool(url);
+                // The node leaves after its pool was picked but before a connection is leased
+                if (left.compareAndSet(false, true)) {
+                    onChange(removed(node));
+                }
+                return pool;
+            }
+        };
+        try {
+            client.onChange(added(node));
+            Request request = Request.create(Request.HttpMethod.GET, "http://127.0.0.1:9996/v1/test",
+                    Collections.emptyMap(), null, StandardCharsets.UTF_8, null);
+            try (Response response = client.execute(request, new Request.Options())) {
+                assertEquals(200, response.status());
+                assertEquals("pong", Util.toString(response.body().asReader(StandardCharsets.UTF_8)));
+            }
+            assertTrue(left.get());
+            verify(1, getRequestedFor(urlEqualTo("/v1/test")));
+        } finally {
+            client.close();
+        }
+    }
+
+    private static NodePoolSettings settings(int warmConnections) {
+        return NodePoolSettings.builder()
+                .warmConnections(warmConnections)
+                .build();
+    }
+
+    private static ServiceNode<ShardInfo> node(int port) {
+        return new ServiceNode<>("127.0.0.1", port, ShardInfo.builder().environment("test").build());
+    }
+
+    private static NodeDelta added(ServiceNode<ShardInfo> node) {
+        return delta(Collections.singletonList(node), Collections.emptyList());
+    }
+
+    private static NodeDelta removed(ServiceNode<ShardInfo> node) {
+        return delta(Collections.emptyList(), Collections.singletonList(node));
+    }
+
+    private static NodeDelta delta(List<ServiceNode<ShardInfo>> added, List<ServiceNode<ShardInfo>> removed) {
+        return new NodeDelta(added, removed, Collections.emptyList(), RoutingTable.EMPTY);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.limit;
+
+import feign.ranger.metrics.RecordingMetrics;
+import feign.ranger.routing.RoutingTable;
+import feign.ranger.routing.RoutingTables;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Adaptive concurrency limits.
+ */
+public class ConcurrencyLimiterTest {
+
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    public void testRejectsAboveLimit() throws Exception {
+        RecordingMetrics metrics = new RecordingMetrics();
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("test", ConcurrencyLimits.builder()
+                .initialLimit(2)
+                .build(), metrics);
+        limiter.acquire(null);
+        limiter.acquire(null);
+        try {
+            limiter.acquire(null);
+            fail();
+        } catch (ConcurrencyLimitExceededException e) {
+            assertEquals(2, e.getLimit());
+            assertEquals(0, e.getStackTrace().length);
+        }
+        assertEquals(1, metrics.service("test").getLimitExceeded().sum());
+        limiter.release(null, RTT, false);
+        limiter.acquire(null);
+        assertEquals(2, limiter.inFlight());
+    }
+
+    @Test
+    public void testNodeLimit() throws Exception {
+        RoutingTable table = RoutingTables.table(2);
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("test", ConcurrencyLimits.builder()
+                .initialLimit(1)
+                .minLimit(1)
+                .perNode(true)
+                .build(), new RecordingMetrics());
+        limiter.acquire(table.get(0));
+        try {
+            limiter.acquire(table.get(0));
+            fail();
+        } catch (ConcurrencyLimitExceededException e) {
+            assertEquals("10.0.0.0:8080", e.getNode());
+        }
+        assertEquals(1, limiter.inFlight());
+    }
+
+    @Test
+    public void testLimitFollowsLatency() {
+        GradientLimit limit = new GradientLimit(ConcurrencyLimits.builder()
+                .initialLimit(20)
+                .build());
+        for (int i = 0; i < 200; i++) {
+            saturate(limit, RTT);
+        }
+        int grown = limit.limit();
+        assertTrue(grown > 20);
+        saturate(limit, RTT * 10);
+        assertTrue(limit.limit() < grown / 2);
+    }
+
+    @Test
+    public void testOnlyOverloadShrinksLimit() {
+        assertFalse(ConcurrencyLimiter.isOverload(500));
+        assertTrue(ConcurrencyLimiter.isOverload(503));
+        assertTrue(ConcurrencyLimiter.isOverload(429));
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("test", ConcurrencyLimits.builder()
+                .initialLimit(20)
+                .build(), new RecordingMetrics());
+        // Application errors at normal latency are normal samples
+        for (int i = 0; i < 200; i++) {
+            limiter.acquire(null);
+            limiter.release(null, RTT, ConcurrencyLimiter.isOverload(500));
+        }
+        assertEquals(20, limiter.limit());
+        for (int i = 0; i < 200; i++) {
+            limiter.acquire(null);
+            limiter.release(null, RTT, ConcurrencyLimiter.isOverload(503));
+        }
+        assertEquals(ConcurrencyLimits.builder().build().getMinLimit(), limiter.limit());
+    }
+
+    private static void saturate(GradientLimit limit, long rtt) {
+        int acquired = 0;
+        while (limit.tryAcquire()) {
+            acquired++;
+        }
+        for (int i = 0; i < acquired; i++) {
+            limit.release(rtt, false);
+        }
+    }
+}
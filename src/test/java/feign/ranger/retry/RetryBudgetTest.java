@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.retry;
+
+import feign.Request;
+import feign.RetryableException;
+import feign.Retryer;
+import feign.Util;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Retry budget accounting.
+ */
+public class RetryBudgetTest {
+
+    @Test
+    public void testRetriesLimitedToRatioOfRequests() {
+        RetryBudget budget = new RetryBudget(0.1, 0);
+        for (int i = 0; i < 100; i++) {
+            budget.onRequest();
+        }
+        for (int i = 0; i < 10; i++) {
+            assertTrue(budget.tryRetry());
+        }
+        assertFalse(budget.tryRetry());
+        for (int i = 0; i < 10; i++) {
+            budget.onRequest();
+        }
+        assertTrue(budget.tryRetry());
+    }
+
+    @Test
+    public void testReserveAllowsRetriesWithoutTraffic() {
+        RetryBudget budget = new RetryBudget(0, 1);
+        assertTrue(budget.tryRetry());
+    }
+
+    @Test(expected = RetryableException.class)
+    public void testRetryerPropagatesWhenBudgetExhausted() {
+        Retryer retryer = new RangerRetryer(new RetryBudget(0, 0), new Retryer.Default(1, 1, 5)).clone();
+        Request request = Request.create(Request.HttpMethod.GET, "http://localhost/v1/test", Collections.emptyMap(),
+                null, Util.UTF_8, null);
+        retryer.continueOrPropagate(new RetryableException(-1, "failed", Request.HttpMethod.GET, (Date) null, request));
+    }
+
+    @Test
+    public void testExhaustedBudgetSkipsDelegateBackoff() {
+        AtomicInteger delegated = new AtomicInteger();
+        Retryer counting = new Retryer() {
+            @Override
+            public void continueOrPropagate(RetryableException e) {
+                delegated.incrementAndGet();
+                throw e;
+            }
+
+            @Override
+            public Retryer clone() {
+                return this;
+            }
+        };
+        RetryBudget budget = new RetryBudget(0, 1);
+        Retryer retryer = new RangerRetryer(budget, counting);
+        for (int i = 0; i < 3; i++) {
+            try {
+                retryer.continueOrPropagate(retryable());
+                fail("Expected the retry to be refused");
+            } catch (RetryableException expected) {
+                // the delegate refused, so the granted retry goes back to the budget
+            }
+        }
+        assertEquals(3, delegated.get());
+        assertTrue(budget.tryRetry());
+
+        try {
+            new RangerRetryer(new RetryBudget(0, 0), counting).continueOrPropagate(retryable());
+            fail("Expected the retry to be refused");
+        } catch (RetryableException expected) {
+            assertEquals(3, delegated.get());
+        }
+    }
+
+    private static RetryableException retryable() {
+        Request request = Request.create(Request.HttpMethod.GET, "http://localhost/v1/test", Collections.emptyMap(),
+                null, Util.UTF_8, null);
+        return new RetryableException(-1, "failed", Request.HttpMethod.GET, (Date) null, request);
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.routing;
+
+import com.flipkart.ranger.model.ServiceNode;
+import feign.Request;
+import feign.RequestTemplate;
+import feign.ranger.common.ShardInfo;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static feign.ranger.routing.RoutingTables.table;
+import static org.junit.Assert.*;
+
+/**
+ * Node selection strategies over a static routing table.
+ */
+public class NodeSelectorTest {
+
+    @Test
+    public void testRoundRobin() throws Exception {
+        RoutingTable table = table(3);
+        NodeSelector selector = new RoundRobinNodeSelector();
+        for (int i = 0; i < 6; i++) {
+            assertSame(table.get(i % 3), selector.select(table));
+        }
+    }
+
+    @Test
+    public void testWeightedRandomSkipsZeroWeight() throws Exception {
+        RoutingTable table = table(3);
+        NodeSelector selector = new WeightedRandomNodeSelector(entry -> entry.getIndex() == 1 ? 0 : 1);
+        for (int i = 0; i < 1000; i++) {
+            assertNotEquals(1, selector.select(table).getIndex());
+        }
+    }
+
+    @Test
+    public void testCapacityWeightedFollowsPublishedWeights() throws Exception {
+        List<ServiceNode<ShardInfo>> nodes = RoutingTables.nodes(3);
+        nodes.get(0).getNodeData().setWeight(1);
+        nodes.get(1).getNodeData().setWeight(0);
+        nodes.get(2).getNodeData().setWeight(3);
+        RoutingTable table = RoutingTable.of(nodes);
+        NodeSelector selector = new CapacityWeightedNodeSelector();
+        int[] counts = new int[3];
+        for (int i = 0; i < 40000; i++) {
+            counts[selector.select(table).getIndex()]++;
+        }
+        assertEquals(0, counts[1]);
+        assertEquals(3.0, (double) counts[2] / counts[0], 0.3);
+        assertFalse(table.hasSameNodes(RoutingTables.nodes(3)));
+    }
+
+    @Test
+    public void testWeightsBuiltOncePerTableWhenTablesAlternate() throws Exception {
+        RoutingTable table = table(3);
+        RoutingTable fallback = RoutingTable.of(RoutingTables.nodes(2));
+        AtomicInteger weighed = new AtomicInteger();
+        NodeSelector selector = new WeightedRandomNodeSelector(entry -> {
+            weighed.incrementAndGet();
+            return 1;
+        });
+        for (int i = 0; i < 100; i++) {
+            assertNotNull(selector.select(table));
+            assertNotNull(selector.select(fallback));
+        }
+        assertEquals(5, weighed.get());
+    }
+
+    @Test
+    public void testConsistentHashIsStickyAndStable() throws Exception {
+        ConsistentHashNodeSelector selector = new ConsistentHashNodeSelector(RoutingKey.header("X-User"));
+        RoutingTable table = table(10);
+        RoutingTable grown = RoutingTable.of(RoutingTables.nodes(11), table);
+        int moved = 0;
+        for (int i = 0; i < 10000; i++) {
+            String key = "user-" + i;
+            RoutingEntry entry = selector.select(table, key);
+            assertSame(entry, selector.select(table, key));
+            RoutingEntry after = selector.select(grown, key);
+            if (!after.getAuthority().equals(entry.getAuthority())) {
+                assertEquals("10.0.0.10:8080", after.getAuthority());
+                moved++;
+            }
+        }
+        assertTrue(moved > 0 && moved < 2000);
+    }
+
+    @Test
+    public void testConsistentHashBoundsLoad() throws Exception {
+        ConsistentHashNodeSelector selector = new ConsistentHashNodeSelector(RoutingKey.header("X-User"));
+        RoutingTable table = table(4);
+        RoutingEntry sticky = selector.select(table, "hot");
+        for (int i = 0; i < 10; i++) {
+            sticky.getStats().requestStarted();
+        }
+        assertNotSame(sticky, selector.select(table, "hot"));
+    }
+
+    @Test
+    public void testSlowStartRampsNewNodes() throws Exception {
+        RoutingTable table = table(3);
+        RoutingTable grown = RoutingTable.of(RoutingTables.nodes(4), table);
+        RoutingEntry added = grown.find("10.0.0.3:8080");
+        long now = System.nanoTime();
+        assertEquals(Long.MAX_VALUE, grown.get(0).getStats().age(now));
+        assertTrue(added.getStats().age(now) < TimeUnit.SECONDS.toNanos(1));
+        assertSame(added.getStats(), RoutingTable.of(RoutingTables.nodes(4), grown).find("10.0.0.3:8080").getStats());
+
+        NodeSelector selector = new SlowStartNodeSelector(new RandomNodeSelector(), SlowStart.builder()
+                .durationMs(60000)
+                .minWeight(0.05)
+                .build());
+        int selected = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (selector.select(grown) == added) {
+                selected++;
+            }
+        }
+        assertTrue(selected < 500);
+
+        SlowStart aggressive = SlowStart.builder()
+                .durationMs(1000)
+                .aggression(4)
+                .build();
+        assertEquals(0.1, aggressive.weight(0), 0.001);
+        assertTrue(aggressive.weight(TimeUnit.MILLISECONDS.toNanos(100)) > 0.5);
+        assertEquals(1.0, aggressive.weight(TimeUnit.SECONDS.toNanos(2)), 0.0);
+    }
+
+    @Test
+    public void testSlowStartShareInTwoNodeTable() throws Exception {
+        RoutingTable grown = RoutingTable.of(RoutingTables.nodes(2), table(1));
+        RoutingEntry added = grown.find("10.0.0.1:8080");
+        NodeSelector selector = new SlowStartNodeSelector(new RandomNodeSelector(), SlowStart.builder()
+                .durationMs(600000)
+                .minWeight(0.05)
+                .build());
+        int selected = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (selector.select(grown) == added) {
+                selected++;
+            }
+        }
+        // 0.05 / (1 + 0.05) of the traffic, about 4.8%
+        assertTrue(selected > 4000 && selected < 5600);
+    }
+
+    @Test
+    public void testRoutingKeys() {
+        RequestTemplate template = new RequestTemplate()
+                .method(Request.HttpMethod.GET)
+                .uri("/v1/users/42?tenant=t1")
+                .header("X-User", "u1")
+                .resolve(Collections.emptyMap());
+        assertEquals("u1", RoutingKey.header("X-User").of(template));
+        assertEquals("t1", RoutingKey.query("tenant").of(template));
+        assertEquals("42", RoutingKey.pathSegment(2).of(template));
+        assertNull(RoutingKey.pathSegment(3).of(template));
+        assertNull(RoutingKey.header("X-Missing").of(template));
+    }
+
+    @Test
+    public void testLeastOutstandingAvoidsBusyNode() throws Exception {
+        RoutingTable table = table(2);
+        table.get(0).getStats().requestStarted();
+        NodeSelector selector = new LeastOutstandingNodeSelector();
+        for (int i = 0; i < 100; i++) {
+            assertSame(table.get(1), selector.select(table));
+        }
+        table.get(0).getStats().requestFinished();
+        assertEquals(0, table.get(0).getStats().inFlight());
+    }
+
+    @Test
+    public void testPeakEwmaAvoidsSlowNode() throws Exception {
+        RoutingTable table = table(2);
+        table.get(0).getStats().recordLatency(TimeUnit.MILLISECONDS.toNanos(500));
+        table.get(1).getStats().recordLatency(TimeUnit.MILLISECONDS.toNanos(5));
+        NodeSelector selector = new PeakEwmaNodeSelector();
+        for (int i = 0; i < 100; i++) {
+            assertSame(table.get(1), selector.select(table));
+        }
+    }
+
+    @Test
+    public void testPeakEwmaFollowsPeaks() throws Exception {
+        NodeStats stats = table(1).get(0).getStats();
+        assertEquals(42.0, stats.latencyEwma(42.0), 0.0);
+        stats.recordLatency(100);
+        stats.recordLatency(1000);
+        assertTrue(stats.latencyEwma(0) > 900);
+    }
+
+    @Test
+    public void testStatsSurviveRebuild() throws Exception {
+        RoutingTable table = table(2);
+        table.get(0).getStats().requestStarted();
+        RoutingTable rebuilt = RoutingTable.of(table.nodes(), table);
+        assertSame(table.get(0).getStats(), rebuilt.find(table.get(0).getAuthority()).getStats());
+        assertSame(table.get(1), table.findByUrl("http://10.0.0.1:8080/apis/v1/test"));
+    }
+
+    @Test
+    public void testEmptyTable() {
+        assertNull(new LeastOutstandingNodeSelector().select(RoutingTable.EMPTY));
+        assertNull(new RoundRobinNodeSelector().select(RoutingTable.EMPTY));
+        assertNull(new RandomNodeSelector().select(RoutingTable.EMPTY));
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2016 Phaneesh Nagaraja <phaneesh.n@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package feign.ranger.routing;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.flipkart.ranger.model.ServiceNode;
+import feign.ranger.client.NodeDeserializer;
+import feign.ranger.common.ShardInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds routing tables of synthetic nodes for tests.
+ */
+public final class RoutingTables {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private RoutingTables() {
+    }
+
+    public static List<ServiceNode<ShardInfo>> nodes(int size) throws Exception {
+        NodeDeserializer deserializer = new NodeDeserializer(objectMapper);
+        List<ServiceNode<ShardInfo>> nodes = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            ObjectNode node = objectMapper.createObjectNode();
+            node.put("host", "10.0.0." + i);
+            node.put("port", 8080);
+            node.putObject("nodeData").put("environment", "test");
+            node.put("healthcheckStatus", "healthy");
+            node.put("lastUpdatedTimeStamp", System.currentTimeMillis());
+            nodes.add(deserializer.deserialize(objectMapper.writeValueAsBytes(node)));
+        }
+        return nodes;
+    }
+
+    public static RoutingTable table(int size) throws Exception {
+        return RoutingTable.of(nodes(size));
+    }
+}